@@ -0,0 +1,102 @@
+package com.revinate.jaxwsspringbenchmarks;
+
+import com.revinate.jaxwsspringsample.Application;
+import com.revinate.jaxwsspringsample.NumberService;
+import com.revinate.sample.service.FactorialPort;
+import com.revinate.sample.service.FibonacciPort;
+import com.revinate.ws.spring.SDDocumentCollector;
+import com.revinate.ws.spring.SpringService;
+import com.sun.xml.ws.transport.http.servlet.SpringBinding;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.FilterType;
+import org.springframework.core.env.Environment;
+
+import javax.xml.namespace.QName;
+import javax.xml.ws.handler.Handler;
+import java.io.IOException;
+import java.net.URL;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Configures the endpoints of the WSDL-first sample as its
+ * {@link Application} does, without the embedded servlet container.
+ *
+ * <p>
+ * Each service gets a {@link PassThroughHandler} when the
+ * <code>benchmark.handlers</code> property is <code>true</code>.
+ */
+@Configuration
+@ComponentScan(basePackageClasses = NumberService.class,
+        excludeFilters = @ComponentScan.Filter(type = FilterType.ASSIGNABLE_TYPE, classes = Application.class))
+public class BenchmarkConfiguration {
+
+    static final String HANDLERS_PROPERTY = "benchmark.handlers";
+
+    private static final Collection<Object> SAMPLESERVICE_METADATA;
+    private static final Object SAMPLESERVICE_PRIMARY_WSDL;
+
+    static {
+        ClassLoader cl = Application.class.getClassLoader();
+        Map<URL, Object> docs = SDDocumentCollector.collectIndexedDocs("sample", cl);
+        SAMPLESERVICE_METADATA = docs.values();
+        SAMPLESERVICE_PRIMARY_WSDL = docs.get(cl.getResource("sample/wsdl/SampleService.wsdl"));
+    }
+
+    @Autowired
+    private Environment environment;
+
+    @Autowired
+    private FibonacciPort fibonacciPort;
+
+    @Autowired
+    private FactorialPort factorialPort;
+
+    @Bean
+    public SpringService fibonacciService() throws IOException {
+        SpringService service = createService(fibonacciPort);
+        service.setPortName(new QName("http://www.revinate.com/sample", "FibonacciPort"));
+        return service;
+    }
+
+    @Bean
+    public SpringService factorialService() throws IOException {
+        SpringService service = createService(factorialPort);
+        service.setPortName(new QName("http://www.revinate.com/sample", "FactorialPort"));
+        return service;
+    }
+
+    @Bean
+    public SpringBinding fibonacciBinding() throws IOException {
+        SpringBinding binding = new SpringBinding();
+        binding.setUrl("/service/fibonacci");
+        binding.setServiceFactory(fibonacciService());
+        return binding;
+    }
+
+    @Bean
+    public SpringBinding factorialBinding() throws IOException {
+        SpringBinding binding = new SpringBinding();
+        binding.setUrl("/service/factorial");
+        binding.setServiceFactory(factorialService());
+        return binding;
+    }
+
+    private SpringService createService(Object bean) throws IOException {
+        SpringService service = new SpringService();
+        service.setBean(bean);
+        service.setServiceName(new QName("http://www.revinate.com/sample", "SampleService"));
+        service.setMetadata(SAMPLESERVICE_METADATA);
+        service.setPrimaryWsdl(SAMPLESERVICE_PRIMARY_WSDL);
+        service.setFastInfoset(true);
+        if (environment.getProperty(HANDLERS_PROPERTY, Boolean.class, false)) {
+            service.setHandlers(Collections.<Handler>singletonList(new PassThroughHandler()));
+        }
+        return service;
+    }
+}
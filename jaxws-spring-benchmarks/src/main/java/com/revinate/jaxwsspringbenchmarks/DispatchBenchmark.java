@@ -0,0 +1,127 @@
+package com.revinate.jaxwsspringbenchmarks;
+
+import com.sun.xml.ws.transport.http.servlet.WSSpringServlet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.mock.web.MockServletConfig;
+import org.springframework.mock.web.MockServletContext;
+import org.springframework.web.context.support.AnnotationConfigWebApplicationContext;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of SOAP requests dispatched by {@link WSSpringServlet} to the
+ * endpoints of the WSDL-first sample.
+ *
+ * <p>
+ * Requests are built with the Spring mock servlet API and passed to the
+ * servlet in-process, so a run covers adapter lookup, message decoding, the
+ * handler chain, endpoint invocation and response encoding, without any
+ * network I/O. Run with the <tt>gc</tt> profiler, as the <code>jmh</code>
+ * task does, to get the allocation per operation; the mock request and
+ * response add a small constant to it.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DispatchBenchmark {
+
+    @Benchmark
+    @Threads(1)
+    public MockHttpServletResponse singleThreaded(Endpoint endpoint) throws Exception {
+        return endpoint.dispatch();
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public MockHttpServletResponse multiThreaded(Endpoint endpoint) throws Exception {
+        return endpoint.dispatch();
+    }
+
+    /**
+     * A servlet serving the sample endpoints, and the request to send it.
+     */
+    @State(Scope.Benchmark)
+    public static class Endpoint {
+
+        @Param({"fibonacci", "factorial"})
+        public String port;
+
+        /**
+         * <tt>small</tt> sends the operation alone; <tt>large</tt> adds a
+         * header the runtime has to parse, but no endpoint understands.
+         */
+        @Param({"small", "large"})
+        public String payload;
+
+        @Param({"false", "true"})
+        public boolean handlers;
+
+        private AnnotationConfigWebApplicationContext context;
+
+        private MockServletContext servletContext;
+
+        private WSSpringServlet servlet;
+
+        private String path;
+
+        private byte[] content;
+
+        @Setup
+        public void setUp() throws Exception {
+            servletContext = new MockServletContext();
+            context = new AnnotationConfigWebApplicationContext();
+            context.setServletContext(servletContext);
+            context.getEnvironment().getPropertySources().addFirst(new MapPropertySource("benchmark",
+                    Collections.<String, Object>singletonMap(BenchmarkConfiguration.HANDLERS_PROPERTY, handlers)));
+            context.register(BenchmarkConfiguration.class);
+            context.refresh();
+
+            servlet = new WSSpringServlet(context);
+            servlet.init(new MockServletConfig(servletContext));
+
+            path = "/service/" + port;
+            content = SampleRequests.create(port, payload).getBytes(StandardCharsets.UTF_8);
+
+            MockHttpServletResponse response = dispatch();
+            if (response.getStatus() != 200) {
+                throw new IllegalStateException("Request to " + path + " failed with status "
+                        + response.getStatus() + ": " + response.getContentAsString());
+            }
+        }
+
+        @TearDown
+        public void tearDown() {
+            servlet.destroy();
+            context.close();
+        }
+
+        MockHttpServletResponse dispatch() throws Exception {
+            MockHttpServletRequest request = new MockHttpServletRequest(servletContext, "POST", path);
+            request.setContentType("text/xml; charset=utf-8");
+            request.addHeader("SOAPAction", "\"\"");
+            request.setContent(content);
+            MockHttpServletResponse response = new MockHttpServletResponse();
+            servlet.service(request, response);
+            return response;
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package com.revinate.jaxwsspringbenchmarks;
+
+import com.sun.xml.fastinfoset.tools.XML_SAX_FI;
+import com.sun.xml.ws.transport.http.servlet.WSSpringServlet;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.mock.web.MockServletConfig;
+import org.springframework.mock.web.MockServletContext;
+import org.springframework.web.context.support.AnnotationConfigWebApplicationContext;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of SOAP requests encoded as text XML or Fast Infoset,
+ * dispatched by {@link WSSpringServlet} to the endpoints of the WSDL-first
+ * sample, as in {@link DispatchBenchmark}.
+ *
+ * <p>
+ * Fast Infoset requests are the text requests converted once at setup, sent
+ * with an <tt>application/fastinfoset</tt> content type and answered in Fast
+ * Infoset. The bytes of requests and responses sent per second are reported
+ * as secondary results, to weigh the bandwidth saved against the throughput.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EncodingBenchmark {
+
+    private static final String FAST_INFOSET_TYPE = "application/fastinfoset";
+
+    @Benchmark
+    @Threads(1)
+    public MockHttpServletResponse singleThreaded(Endpoint endpoint, Traffic traffic) throws Exception {
+        return endpoint.dispatch(traffic);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public MockHttpServletResponse multiThreaded(Endpoint endpoint, Traffic traffic) throws Exception {
+        return endpoint.dispatch(traffic);
+    }
+
+    /**
+     * A servlet serving the sample endpoints, and the request to send it.
+     */
+    @State(Scope.Benchmark)
+    public static class Endpoint {
+
+        @Param({"fibonacci", "factorial"})
+        public String port;
+
+        @Param({"small", "large"})
+        public String payload;
+
+        @Param({"xml", "fastinfoset"})
+        public String encoding;
+
+        private AnnotationConfigWebApplicationContext context;
+
+        private MockServletContext servletContext;
+
+        private WSSpringServlet servlet;
+
+        private String path;
+
+        private String contentType;
+
+        private byte[] content;
+
+        /**
+         * Size of the response, which is the same for every request.
+         */
+        private int responseLength;
+
+        @Setup
+        public void setUp() throws Exception {
+            servletContext = new MockServletContext();
+            context = new AnnotationConfigWebApplicationContext();
+            context.setServletContext(servletContext);
+            context.register(BenchmarkConfiguration.class);
+            context.refresh();
+
+            servlet = new WSSpringServlet(context);
+            servlet.init(new MockServletConfig(servletContext));
+
+            path = "/service/" + port;
+            byte[] xml = SampleRequests.create(port, payload).getBytes(StandardCharsets.UTF_8);
+            if (encoding.equals("fastinfoset")) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                new XML_SAX_FI().parse(new ByteArrayInputStream(xml), out);
+                contentType = FAST_INFOSET_TYPE;
+                content = out.toByteArray();
+            } else {
+                contentType = "text/xml; charset=utf-8";
+                content = xml;
+            }
+
+            MockHttpServletResponse response = dispatch();
+            if (response.getStatus() != 200) {
+                throw new IllegalStateException("Request to " + path + " failed with status "
+                        + response.getStatus() + ": " + response.getContentAsString());
+            }
+            if (encoding.equals("fastinfoset") && !FAST_INFOSET_TYPE.equals(response.getContentType())) {
+                throw new IllegalStateException("Request to " + path + " was answered with "
+                        + response.getContentType());
+            }
+            responseLength = response.getContentAsByteArray().length;
+        }
+
+        @TearDown
+        public void tearDown() {
+            servlet.destroy();
+            context.close();
+        }
+
+        MockHttpServletResponse dispatch(Traffic traffic) throws Exception {
+            traffic.requestBytes += content.length;
+            traffic.responseBytes += responseLength;
+            return dispatch();
+        }
+
+        MockHttpServletResponse dispatch() throws Exception {
+            MockHttpServletRequest request = new MockHttpServletRequest(servletContext, "POST", path);
+            // JAX-WS buffers the responses to HTTP/1.0 requests
+            request.setProtocol("HTTP/1.1");
+            request.setContentType(contentType);
+            request.addHeader("SOAPAction", "\"\"");
+            request.setContent(content);
+            MockHttpServletResponse response = new MockHttpServletResponse();
+            servlet.service(request, response);
+            return response;
+        }
+    }
+
+    /**
+     * Bytes sent by each thread, reported by JMH per second.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Traffic {
+
+        public long requestBytes;
+
+        public long responseBytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            requestBytes = 0;
+            responseBytes = 0;
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.revinate.jaxwsspringbenchmarks;
+
+import javax.xml.namespace.QName;
+import javax.xml.ws.handler.MessageContext;
+import javax.xml.ws.handler.soap.SOAPHandler;
+import javax.xml.ws.handler.soap.SOAPMessageContext;
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * {@link SOAPHandler} that accepts every message after reading it as a
+ * SAAJ message, like logging or security handlers do. This is what makes
+ * handler chains expensive: the streaming message has to be materialized
+ * on the way in and on the way out.
+ */
+public class PassThroughHandler implements SOAPHandler<SOAPMessageContext> {
+
+    @Override
+    public boolean handleMessage(SOAPMessageContext context) {
+        return context.getMessage() != null;
+    }
+
+    @Override
+    public boolean handleFault(SOAPMessageContext context) {
+        return true;
+    }
+
+    @Override
+    public void close(MessageContext context) {}
+
+    @Override
+    public Set<QName> getHeaders() {
+        return Collections.emptySet();
+    }
+}
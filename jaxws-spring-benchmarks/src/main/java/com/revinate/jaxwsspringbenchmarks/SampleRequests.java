@@ -0,0 +1,48 @@
+package com.revinate.jaxwsspringbenchmarks;
+
+/**
+ * SOAP envelopes of requests to the endpoints of the WSDL-first sample.
+ */
+final class SampleRequests {
+
+    private static final String ENVELOPE_START =
+            "<S:Envelope xmlns:S=\"http://schemas.xmlsoap.org/soap/envelope/\">";
+
+    private static final String ENVELOPE_END = "</S:Envelope>";
+
+    /**
+     * Number of entries in the header of large requests, about 64 KB.
+     */
+    private static final int LARGE_HEADER_ENTRIES = 1024;
+
+    private SampleRequests() {}
+
+    /**
+     * Returns a request to the given port, <tt>fibonacci</tt> or
+     * <tt>factorial</tt>. <tt>small</tt> payloads hold the operation alone;
+     * <tt>large</tt> ones add a header the runtime has to parse, but no
+     * endpoint understands.
+     */
+    static String create(String port, String payload) {
+        StringBuilder content = new StringBuilder(ENVELOPE_START);
+        if (payload.equals("large")) {
+            content.append("<S:Header><b:Trace xmlns:b=\"urn:benchmark\">");
+            for (int i = 0; i < LARGE_HEADER_ENTRIES; i++) {
+                content.append("<b:Entry id=\"").append(i).append("\">")
+                        .append("Lorem ipsum dolor sit amet, consectetur adipiscing.")
+                        .append("</b:Entry>");
+            }
+            content.append("</b:Trace></S:Header>");
+        }
+        content.append("<S:Body>");
+        if (port.equals("fibonacci")) {
+            content.append("<ns:Fibonacci xmlns:ns=\"http://www.revinate.com/sample\">")
+                    .append("<ns:index>10</ns:index></ns:Fibonacci>");
+        } else {
+            content.append("<ns:Factorial xmlns:ns=\"http://www.revinate.com/sample\">")
+                    .append("<ns:number>10</ns:number></ns:Factorial>");
+        }
+        content.append("</S:Body>").append(ENVELOPE_END);
+        return content.toString();
+    }
+}
@@ -2,8 +2,13 @@ package com.revinate.jaxwsspringsample;
 
 import com.revinate.sample.service.FactorialPort;
 import com.revinate.sample.service.FibonacciPort;
+import com.revinate.ws.spring.EndpointWarmer;
+import com.revinate.ws.spring.MetadataCache;
+import com.revinate.ws.spring.ParallelEndpointInitializer;
 import com.revinate.ws.spring.SDDocumentCollector;
 import com.revinate.ws.spring.SpringService;
+import com.revinate.ws.spring.metrics.JmxMetricsRegistry;
+import com.revinate.ws.spring.startup.StartupProfiler;
 import com.sun.xml.ws.transport.http.servlet.SpringBinding;
 import com.sun.xml.ws.transport.http.servlet.WSSpringServlet;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -17,6 +22,7 @@ import javax.xml.namespace.QName;
 import java.io.IOException;
 import java.net.URL;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Map;
 
 @SpringBootApplication
@@ -27,7 +33,7 @@ public class Application {
 
     static {
         ClassLoader cl = Application.class.getClassLoader();
-        Map<URL, Object> docs = SDDocumentCollector.collectDocs("sample", cl);
+        Map<URL, Object> docs = SDDocumentCollector.collectIndexedDocs("sample", cl);
         SAMPLESERVICE_METADATA = docs.values();
         SAMPLESERVICE_PRIMARY_WSDL = docs.get(cl.getResource("sample/wsdl/SampleService.wsdl"));
     }
@@ -52,14 +58,43 @@ public class Application {
         return new ServletRegistrationBean(jaxwsServlet(), "/service/*");
     }
 
+    @Bean
+    public ParallelEndpointInitializer parallelEndpointInitializer() {
+        return new ParallelEndpointInitializer();
+    }
+
+    @Bean
+    public EndpointWarmer endpointWarmer() {
+        return new EndpointWarmer();
+    }
+
+    @Bean
+    public static StartupProfiler startupProfiler() {
+        return new StartupProfiler();
+    }
+
+    @Bean
+    public MetadataCache metadataCache() {
+        return new MetadataCache();
+    }
+
+    @Bean
+    public JmxMetricsRegistry metricsRegistry() {
+        return new JmxMetricsRegistry();
+    }
+
     @Bean
     public SpringService fibonacciService() throws IOException {
         SpringService service = new SpringService();
         service.setBean(fibonacciPort);
         service.setServiceName(new QName("http://www.revinate.com/sample", "SampleService"));
         service.setPortName(new QName("http://www.revinate.com/sample", "FibonacciPort"));
+        service.setCacheableOperations(Collections.singletonList(
+                new QName("http://www.revinate.com/sample", "Fibonacci")));
         service.setMetadata(SAMPLESERVICE_METADATA);
         service.setPrimaryWsdl(SAMPLESERVICE_PRIMARY_WSDL);
+        service.setMetadataCache(metadataCache());
+        service.setMetricsRegistry(metricsRegistry());
         return service;
     }
 
@@ -69,24 +104,28 @@ public class Application {
         service.setBean(factorialPort);
         service.setServiceName(new QName("http://www.revinate.com/sample", "SampleService"));
         service.setPortName(new QName("http://www.revinate.com/sample", "FactorialPort"));
+        service.setWarmUpOperations(Collections.singletonList(
+                new QName("http://www.revinate.com/sample", "Factorial")));
         service.setMetadata(SAMPLESERVICE_METADATA);
         service.setPrimaryWsdl(SAMPLESERVICE_PRIMARY_WSDL);
+        service.setMetadataCache(metadataCache());
+        service.setMetricsRegistry(metricsRegistry());
         return service;
     }
 
     @Bean
-    public SpringBinding fibonacciBinding() throws Exception {
+    public SpringBinding fibonacciBinding() throws IOException {
         SpringBinding binding = new SpringBinding();
         binding.setUrl("/service/fibonacci");
-        binding.setService(fibonacciService().getObject());
+        binding.setServiceFactory(fibonacciService());
         return binding;
     }
 
     @Bean
-    public SpringBinding factorialBinding() throws Exception {
+    public SpringBinding factorialBinding() throws IOException {
         SpringBinding binding = new SpringBinding();
         binding.setUrl("/service/factorial");
-        binding.setService(factorialService().getObject());
+        binding.setServiceFactory(factorialService());
         return binding;
     }
 }
@@ -0,0 +1,251 @@
+package com.revinate.ws.spring;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool of byte arrays used by
+ * {@link com.sun.xml.ws.transport.http.servlet.WSSpringServlet} to buffer
+ * compressed request and response bodies, so that each request does not
+ * allocate its own buffers.
+ *
+ * <p>
+ * Buffers come in size classes, the powers of two from 512 bytes to the
+ * maximum buffer size; larger buffers are allocated as needed and not
+ * pooled. Each thread keeps a couple of released buffers of each class up to
+ * the maximum thread cached size for itself, and hands the others back to a
+ * pool shared by all threads, which keeps up to a maximum number of buffers
+ * per class. The statistics only see the shared pool: each thread may keep
+ * up to {@link #getMaxThreadCachedBytes()} more.
+ *
+ * <p>
+ * Buffers that are not released are simply reclaimed by the garbage
+ * collector. A pool can be shared by several servlets.
+ */
+public class BufferPool {
+
+    private static final int MIN_SHIFT = 9;
+
+    private static final int MAX_SHIFT = 30;
+
+    /**
+     * Number of buffers of each class kept by each thread.
+     */
+    private static final int THREAD_CACHE_SIZE = 2;
+
+    private int maxBufferSize = 1024 * 1024;
+
+    private int maxPooledBuffers = 64;
+
+    private int maxThreadCachedBufferSize = 64 * 1024;
+
+    /**
+     * Shared pool of each size class.
+     */
+    private final SizeClass[] pools = new SizeClass[MAX_SHIFT - MIN_SHIFT + 1];
+
+    /**
+     * Buffers kept by the current thread, {@link #THREAD_CACHE_SIZE} slots
+     * per class. Only holds arrays, so that threads of a container do not
+     * keep the class loader of the application.
+     */
+    private final ThreadLocal<byte[][]> threadCaches = new ThreadLocal<>();
+
+    private final AtomicLong acquireCount = new AtomicLong();
+
+    private final AtomicLong allocationCount = new AtomicLong();
+
+    private final AtomicLong discardCount = new AtomicLong();
+
+    public BufferPool() {
+        for (int i = 0; i < pools.length; i++) {
+            pools[i] = new SizeClass();
+        }
+    }
+
+    /**
+     * Sets the size in bytes of the largest pooled buffers, rounded up to
+     * a power of two, between 512 bytes and 1 GB. Defaults to 1 MB.
+     */
+    public void setMaxBufferSize(int maxBufferSize) {
+        if (maxBufferSize <= 1 << MIN_SHIFT) {
+            this.maxBufferSize = 1 << MIN_SHIFT;
+        } else if (maxBufferSize > 1 << MAX_SHIFT) {
+            this.maxBufferSize = 1 << MAX_SHIFT;
+        } else {
+            this.maxBufferSize = Integer.highestOneBit(maxBufferSize - 1) << 1;
+        }
+    }
+
+    /**
+     * Sets the maximum number of buffers of each size class kept in the
+     * shared pool, in addition to those kept by each thread.
+     * Defaults to <code>64</code>.
+     */
+    public void setMaxPooledBuffers(int maxPooledBuffers) {
+        this.maxPooledBuffers = maxPooledBuffers;
+    }
+
+    /**
+     * Sets the size in bytes of the largest buffers kept by each thread,
+     * larger ones only being kept in the shared pool. Defaults to 64 KB;
+     * <code>0</code> disables the thread caches.
+     */
+    public void setMaxThreadCachedBufferSize(int maxThreadCachedBufferSize) {
+        this.maxThreadCachedBufferSize = maxThreadCachedBufferSize;
+    }
+
+    /**
+     * Returns a buffer of at least the given size. Its content is undefined.
+     */
+    public byte[] acquire(int size) {
+        acquireCount.incrementAndGet();
+        int sizeClass = getSizeClass(size);
+        if (sizeClass < 0) {
+            allocationCount.incrementAndGet();
+            return new byte[size];
+        }
+
+        byte[][] threadCache = threadCaches.get();
+        if (threadCache != null) {
+            int slot = sizeClass * THREAD_CACHE_SIZE;
+            for (int i = slot; i < slot + THREAD_CACHE_SIZE; i++) {
+                byte[] buffer = threadCache[i];
+                if (buffer != null) {
+                    threadCache[i] = null;
+                    return buffer;
+                }
+            }
+        }
+
+        SizeClass pool = pools[sizeClass];
+        byte[] buffer = pool.buffers.poll();
+        if (buffer != null) {
+            pool.count.decrementAndGet();
+            return buffer;
+        }
+        allocationCount.incrementAndGet();
+        return new byte[1 << (sizeClass + MIN_SHIFT)];
+    }
+
+    /**
+     * Returns a buffer obtained from {@link #acquire(int)} to the pool.
+     * The buffer must not be used afterwards.
+     */
+    public void release(byte[] buffer) {
+        int sizeClass = getSizeClass(buffer.length);
+        if (sizeClass < 0 || buffer.length != 1 << (sizeClass + MIN_SHIFT)) {
+            discardCount.incrementAndGet();
+            return;
+        }
+
+        if (buffer.length <= maxThreadCachedBufferSize) {
+            byte[][] threadCache = threadCaches.get();
+            if (threadCache == null) {
+                threadCache = new byte[pools.length * THREAD_CACHE_SIZE][];
+                threadCaches.set(threadCache);
+            }
+            int slot = sizeClass * THREAD_CACHE_SIZE;
+            for (int i = slot; i < slot + THREAD_CACHE_SIZE; i++) {
+                if (threadCache[i] == null) {
+                    threadCache[i] = buffer;
+                    return;
+                }
+            }
+        }
+
+        SizeClass pool = pools[sizeClass];
+        if (pool.count.incrementAndGet() > maxPooledBuffers) {
+            pool.count.decrementAndGet();
+            discardCount.incrementAndGet();
+            return;
+        }
+        pool.buffers.offer(buffer);
+    }
+
+    /**
+     * Returns the index of the size class of buffers of the given size,
+     * or <code>-1</code> if they are not pooled.
+     */
+    private int getSizeClass(int size) {
+        if (size > maxBufferSize || size > 1 << MAX_SHIFT) {
+            return -1;
+        }
+        int shift = size <= 1 << MIN_SHIFT ? MIN_SHIFT : 32 - Integer.numberOfLeadingZeros(size - 1);
+        return shift - MIN_SHIFT;
+    }
+
+    /**
+     * Returns the number of buffers acquired.
+     */
+    public long getAcquireCount() {
+        return acquireCount.get();
+    }
+
+    /**
+     * Returns the number of buffers acquired that were not in the pool
+     * and had to be allocated.
+     */
+    public long getAllocationCount() {
+        return allocationCount.get();
+    }
+
+    /**
+     * Returns the number of buffers released that were dropped because
+     * they were too large, or because the pool was full.
+     */
+    public long getDiscardCount() {
+        return discardCount.get();
+    }
+
+    /**
+     * Returns the number of buffers in the shared pool, not counting
+     * those kept by threads.
+     */
+    public int getPooledCount() {
+        int count = 0;
+        for (SizeClass pool : pools) {
+            count += pool.count.get();
+        }
+        return count;
+    }
+
+    /**
+     * Returns the number of bytes in the shared pool, not counting
+     * buffers kept by threads.
+     *
+     * @see #getMaxThreadCachedBytes()
+     */
+    public long getPooledBytes() {
+        long bytes = 0;
+        for (int i = 0; i < pools.length; i++) {
+            bytes += (long) pools[i].count.get() << (i + MIN_SHIFT);
+        }
+        return bytes;
+    }
+
+    /**
+     * Returns the maximum number of bytes each thread that released buffers
+     * may keep, in addition to the shared pool.
+     */
+    public long getMaxThreadCachedBytes() {
+        long bytes = 0;
+        for (long size = 1 << MIN_SHIFT; size <= Math.min(maxThreadCachedBufferSize, maxBufferSize); size <<= 1) {
+            bytes += size * THREAD_CACHE_SIZE;
+        }
+        return bytes;
+    }
+
+    /**
+     * Buffers of a size class in the shared pool, with their number, since
+     * the size of the queue is not constant-time.
+     */
+    private static final class SizeClass {
+
+        final Queue<byte[]> buffers = new ConcurrentLinkedQueue<>();
+
+        final AtomicInteger count = new AtomicInteger();
+    }
+}
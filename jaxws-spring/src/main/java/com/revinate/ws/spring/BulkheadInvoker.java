@@ -0,0 +1,113 @@
+package com.revinate.ws.spring;
+
+import com.sun.xml.ws.api.message.Packet;
+import com.sun.xml.ws.api.server.AsyncProviderCallback;
+import com.sun.xml.ws.api.server.Invoker;
+import com.sun.xml.ws.api.server.WSEndpoint;
+import com.sun.xml.ws.api.server.WSWebServiceContext;
+
+import javax.xml.ws.WebServiceContext;
+import javax.xml.ws.WebServiceException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link Invoker} that isolates an endpoint from the others sharing the same
+ * servlet, by limiting the number of concurrent invocations.
+ *
+ * <p>
+ * Invocations over the limit wait at most {@code acquireTimeout} milliseconds
+ * for a permit, and then fail with a {@link WebServiceException}, which is
+ * reported to the client as a SOAP fault.
+ *
+ * @see SpringService#setMaxConcurrency(int)
+ */
+public class BulkheadInvoker extends Invoker {
+
+    private final Invoker delegate;
+
+    /**
+     * Permits for concurrent invocations, or {@code null} if unlimited.
+     */
+    private final Semaphore permits;
+
+    private final long acquireTimeout;
+
+    /**
+     * @param delegate the invoker that actually calls the endpoint
+     * @param maxConcurrency the maximum number of concurrent invocations,
+     * or <code>0</code> if unlimited
+     * @param acquireTimeout the maximum time in milliseconds to wait for a permit
+     */
+    public BulkheadInvoker(Invoker delegate, int maxConcurrency, long acquireTimeout) {
+        this.delegate = delegate;
+        this.permits = maxConcurrency > 0 ? new Semaphore(maxConcurrency) : null;
+        this.acquireTimeout = acquireTimeout;
+    }
+
+    @Override
+    public void start(WSWebServiceContext wsc, WSEndpoint endpoint) {
+        delegate.start(wsc, endpoint);
+    }
+
+    @Override
+    public void dispose() {
+        delegate.dispose();
+    }
+
+    @Override
+    public Object invoke(Packet p, Method m, Object... args)
+            throws InvocationTargetException, IllegalAccessException {
+        acquire();
+        try {
+            return delegate.invoke(p, m, args);
+        } finally {
+            release();
+        }
+    }
+
+    @Override
+    public <T> T invokeProvider(Packet p, T arg)
+            throws IllegalAccessException, InvocationTargetException {
+        acquire();
+        try {
+            return delegate.invokeProvider(p, arg);
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * Asynchronous providers complete on their own schedule, so they are
+     * not limited.
+     */
+    @Override
+    public <T> void invokeAsyncProvider(Packet p, T arg, AsyncProviderCallback cbak, WebServiceContext ctxt)
+            throws IllegalAccessException, InvocationTargetException {
+        delegate.invokeAsyncProvider(p, arg, cbak, ctxt);
+    }
+
+    private void acquire() {
+        if (permits == null) {
+            return;
+        }
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(acquireTimeout, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new WebServiceException("Interrupted while waiting for the endpoint", e);
+        }
+        if (!acquired) {
+            throw new WebServiceException("Endpoint is busy, too many concurrent requests");
+        }
+    }
+
+    private void release() {
+        if (permits != null) {
+            permits.release();
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package com.revinate.ws.spring;
+
+import com.sun.xml.ws.api.SOAPVersion;
+import com.sun.xml.ws.api.message.Message;
+import com.sun.xml.ws.api.message.Packet;
+import com.sun.xml.ws.api.model.JavaMethod;
+import com.sun.xml.ws.api.model.SEIModel;
+import com.sun.xml.ws.api.pipe.Codec;
+import com.sun.xml.ws.api.server.TransportBackChannel;
+import com.sun.xml.ws.api.server.WSEndpoint;
+import com.sun.xml.ws.api.server.WebServiceContextDelegate;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.BeanFactoryAware;
+import org.springframework.beans.factory.BeanFactoryUtils;
+import org.springframework.beans.factory.ListableBeanFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+
+import javax.xml.namespace.QName;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replays sample requests through the endpoints of {@link SpringService}
+ * beans, once all singletons of the application context have been
+ * instantiated, so that JAXB, StAX and the JIT compiler are warmed up before
+ * the application starts serving requests.
+ *
+ * <p>
+ * Sample requests are configured on each service, with
+ * {@link SpringService#setWarmUpRequests(List)} or generated for
+ * {@link SpringService#setWarmUpOperations(java.util.Collection)}; services
+ * with neither are skipped. Requests are decoded, processed by the tubeline
+ * and encoded in-process, without going through HTTP. They are marked as
+ * {@link #isWarmUp(Packet) warm-up requests}, which the response cache and
+ * metrics tubes let through untouched: every iteration invokes the endpoint,
+ * and nothing is cached or recorded in metrics.
+ * Services only bound {@link com.sun.xml.ws.transport.http.servlet.SpringBinding#setLazy(boolean) lazily}
+ * are skipped, since warming them up would create them at startup.
+ * Failures are logged and do not prevent the application from starting.
+ */
+public class EndpointWarmer implements BeanFactoryAware, SmartInitializingSingleton {
+
+    private static final Log logger = LogFactory.getLog(EndpointWarmer.class);
+
+    /**
+     * Invocation property marking warm-up requests.
+     */
+    private static final String WARM_UP_PROPERTY = EndpointWarmer.class.getName() + ".warmUp";
+
+    private ListableBeanFactory beanFactory;
+
+    private int iterations = 1000;
+
+    private long timeLimit = 0;
+
+    public void setBeanFactory(BeanFactory beanFactory) throws BeansException {
+        if (!(beanFactory instanceof ListableBeanFactory)) {
+            throw new IllegalArgumentException("EndpointWarmer requires a ListableBeanFactory");
+        }
+        this.beanFactory = (ListableBeanFactory) beanFactory;
+    }
+
+    /**
+     * Sets how many times the sample requests of each endpoint are replayed.
+     * Defaults to <code>1000</code>.
+     */
+    public void setIterations(int iterations) {
+        this.iterations = iterations;
+    }
+
+    /**
+     * Sets the maximum time, in milliseconds, spent warming up each endpoint.
+     * Defaults to <code>0</code>, in which case all iterations are replayed.
+     */
+    public void setTimeLimit(long timeLimit) {
+        this.timeLimit = timeLimit;
+    }
+
+    public void afterSingletonsInstantiated() {
+        Map<String, SpringService> services = beanFactory.getBeansOfType(SpringService.class);
+        Set<SpringService> lazyServices = ParallelEndpointInitializer.getLazyServices(beanFactory);
+        for (Map.Entry<String, SpringService> entry : services.entrySet()) {
+            SpringService service = entry.getValue();
+            if (service.getWarmUpRequests() == null && service.getWarmUpOperations() == null) {
+                continue;
+            }
+
+            String beanName = BeanFactoryUtils.transformedBeanName(entry.getKey());
+            if (lazyServices.contains(service)) {
+                logger.info("Skipped warming up lazily bound endpoint for " + beanName);
+                continue;
+            }
+            try {
+                WSEndpoint<?> endpoint = service.getObject();
+                List<byte[]> requests = createRequests(service, endpoint);
+                if (!requests.isEmpty()) {
+                    warmUp(beanName, endpoint, requests);
+                }
+            } catch (Exception e) {
+                logger.warn("Failed to warm up endpoint for " + beanName, e);
+            }
+        }
+    }
+
+    private void warmUp(String beanName, WSEndpoint<?> endpoint, List<byte[]> requests) throws IOException {
+        Codec codec = endpoint.createCodec();
+        WSEndpoint.PipeHead head = endpoint.createPipeHead();
+        String contentType = endpoint.getBinding().getSOAPVersion().contentType + "; charset=utf-8";
+        OutputStream discard = new DiscardingOutputStream();
+
+        long start = System.nanoTime();
+        int count = 0;
+        int faults = 0;
+        for (int i = 0; i < iterations; i++) {
+            for (byte[] request : requests) {
+                Packet packet = new Packet();
+                codec.decode(new ByteArrayInputStream(request), contentType, packet);
+                packet.invocationProperties.put(WARM_UP_PROPERTY, Boolean.TRUE);
+                Packet response = head.process(packet, WarmUpContext.INSTANCE, WarmUpContext.INSTANCE);
+                Message message = response.getMessage();
+                if (message != null) {
+                    if (message.isFault()) {
+                        faults++;
+                    }
+                    codec.encode(response, discard);
+                }
+                count++;
+            }
+            if (timeLimit > 0 && System.nanoTime() - start > TimeUnit.MILLISECONDS.toNanos(timeLimit)) {
+                break;
+            }
+        }
+
+        logger.info("Warmed up endpoint for " + beanName + " with " + count + " requests in "
+                + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms"
+                + (faults > 0 ? ", " + faults + " of which returned a fault" : ""));
+    }
+
+    /**
+     * Returns whether a request is replayed by an {@link EndpointWarmer},
+     * in which case it should not be cached or recorded.
+     */
+    public static boolean isWarmUp(Packet request) {
+        return request.invocationProperties.containsKey(WARM_UP_PROPERTY);
+    }
+
+    /**
+     * Returns the SOAP envelopes of the sample requests of a service.
+     */
+    private static List<byte[]> createRequests(SpringService service, WSEndpoint<?> endpoint) {
+        List<byte[]> requests = new ArrayList<>();
+        SOAPVersion soapVersion = endpoint.getBinding().getSOAPVersion();
+        if (soapVersion == null) {
+            logger.warn("Cannot warm up endpoint " + endpoint.getPortName() + ", which does not use SOAP");
+            return requests;
+        }
+
+        List<String> payloads = new ArrayList<>();
+        if (service.getWarmUpRequests() != null) {
+            payloads.addAll(service.getWarmUpRequests());
+        }
+        if (service.getWarmUpOperations() != null) {
+            SEIModel model = endpoint.getSEIModel();
+            for (QName operation : service.getWarmUpOperations()) {
+                JavaMethod method = model != null ? model.getJavaMethodForWsdlOperation(operation) : null;
+                QName name = method != null ? method.getRequestPayloadName() : null;
+                if (name == null) {
+                    logger.warn("Cannot generate a warm-up request for operation " + operation);
+                } else if (name.getNamespaceURI().isEmpty()) {
+                    payloads.add("<" + name.getLocalPart() + "/>");
+                } else {
+                    payloads.add("<ns:" + name.getLocalPart() + " xmlns:ns=\"" + name.getNamespaceURI() + "\"/>");
+                }
+            }
+        }
+
+        for (String payload : payloads) {
+            String envelope = "<S:Envelope xmlns:S=\"" + soapVersion.nsUri + "\"><S:Body>"
+                    + payload + "</S:Body></S:Envelope>";
+            requests.add(envelope.getBytes(StandardCharsets.UTF_8));
+        }
+        return requests;
+    }
+
+    /**
+     * Context of in-process requests, which have no user and no transport.
+     */
+    private static final class WarmUpContext implements WebServiceContextDelegate, TransportBackChannel {
+
+        static final WarmUpContext INSTANCE = new WarmUpContext();
+
+        public Principal getUserPrincipal(Packet request) {
+            return null;
+        }
+
+        public boolean isUserInRole(Packet request, String role) {
+            return false;
+        }
+
+        public String getEPRAddress(Packet request, WSEndpoint endpoint) {
+            return null;
+        }
+
+        public String getWSDLAddress(Packet request, WSEndpoint endpoint) {
+            return null;
+        }
+
+        public void close() {
+        }
+    }
+
+    private static final class DiscardingOutputStream extends OutputStream {
+
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    }
+}
@@ -0,0 +1,272 @@
+package com.revinate.ws.spring;
+
+import com.sun.xml.bind.api.JAXBRIContext;
+import com.sun.xml.bind.api.TypeReference;
+import com.sun.xml.stream.buffer.XMLStreamBuffer;
+import com.sun.xml.ws.api.model.SEIModel;
+import com.sun.xml.ws.api.server.SDDocumentSource;
+import com.sun.xml.ws.developer.JAXBContextFactory;
+import com.sun.xml.ws.developer.UsesJAXBContextFeature;
+import com.sun.xml.ws.util.xml.XmlUtil;
+
+import javax.xml.bind.JAXBException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.ws.WebServiceException;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Cache shared by the {@link SpringService}s of an application context, so
+ * that endpoints built from the same WSDL and schemas do not each read and
+ * parse them, or build their own JAXB context.
+ *
+ * <p>
+ * Documents are keyed by URL and a SHA-1 hash of their content, and are kept
+ * parsed in memory as {@link XMLStreamBuffer}s, which every endpoint then
+ * reads from. Only the latest content of each URL is kept, so that documents
+ * changed by hot reload do not accumulate. JAXB contexts are keyed by the classes and type references they
+ * bind, and are shared by the endpoints binding the same types, such as the
+ * same port type published at several addresses.
+ *
+ * <p>
+ * Each entry is only built once, even when endpoints are created concurrently
+ * by a {@link ParallelEndpointInitializer}.
+ *
+ * @see SpringService#setMetadataCache(MetadataCache)
+ */
+public class MetadataCache {
+
+    private final ConcurrentMap<String, FutureTask<SDDocumentSource>> documents = new ConcurrentHashMap<>();
+
+    /**
+     * Key of the latest document read from each URL.
+     */
+    private final ConcurrentMap<String, String> documentKeys = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<ContextKey, FutureTask<JAXBRIContext>> contexts = new ConcurrentHashMap<>();
+
+    private final JAXBContextFactory contextFactory = new CachingJAXBContextFactory(JAXBContextFactory.DEFAULT);
+
+    /**
+     * Returns an in-memory copy of the given document, shared with the other
+     * endpoints using a document with the same URL and content.
+     */
+    public SDDocumentSource getDocument(SDDocumentSource source) throws IOException {
+        final URL systemId = source.getSystemId();
+        if (systemId == null) {
+            return source;
+        }
+
+        final byte[] content = read(systemId);
+        String key = systemId.toExternalForm() + '#' + hash(content);
+        SDDocumentSource document = getOrCreate(documents, key, new Callable<SDDocumentSource>() {
+            public SDDocumentSource call() throws XMLStreamException {
+                XMLInputFactory inputFactory = XmlUtil.newXMLInputFactory(true);
+                XMLStreamReader reader = inputFactory.createXMLStreamReader(
+                        systemId.toExternalForm(), new ByteArrayInputStream(content));
+                try {
+                    return SDDocumentSource.create(systemId, XMLStreamBuffer.createNewBufferFromXMLStreamReader(reader));
+                } finally {
+                    reader.close();
+                }
+            }
+        });
+
+        // endpoints still using the previous content keep their copy
+        String previousKey = documentKeys.put(systemId.toExternalForm(), key);
+        if (previousKey != null && !previousKey.equals(key)) {
+            documents.remove(previousKey);
+        }
+        return document;
+    }
+
+    /**
+     * Returns the shared copies of the given documents.
+     *
+     * @see #getDocument(SDDocumentSource)
+     */
+    public List<SDDocumentSource> getDocuments(Collection<? extends SDDocumentSource> sources) throws IOException {
+        List<SDDocumentSource> documents = new ArrayList<>(sources.size());
+        for (SDDocumentSource source : sources) {
+            documents.add(getDocument(source));
+        }
+        return documents;
+    }
+
+    /**
+     * Returns the feature that makes an endpoint use the shared JAXB contexts.
+     */
+    public UsesJAXBContextFeature getJAXBContextFeature() {
+        return new UsesJAXBContextFeature(contextFactory);
+    }
+
+    /**
+     * Returns the number of cached documents.
+     */
+    public int getDocumentCount() {
+        return documents.size();
+    }
+
+    /**
+     * Returns the number of cached JAXB contexts.
+     */
+    public int getJAXBContextCount() {
+        return contexts.size();
+    }
+
+    /**
+     * Removes all entries, so that documents are read again.
+     */
+    public void clear() {
+        documents.clear();
+        documentKeys.clear();
+        contexts.clear();
+    }
+
+    private static <K, V> V getOrCreate(ConcurrentMap<K, FutureTask<V>> cache, K key, Callable<V> creator) {
+        FutureTask<V> task = cache.get(key);
+        if (task == null) {
+            FutureTask<V> newTask = new FutureTask<>(creator);
+            task = cache.putIfAbsent(key, newTask);
+            if (task == null) {
+                task = newTask;
+                task.run();
+            }
+        }
+
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new WebServiceException("Interrupted while waiting for " + key, e);
+        } catch (ExecutionException e) {
+            // do not cache failures
+            cache.remove(key, task);
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new WebServiceException("Failed to create " + key, cause);
+        }
+    }
+
+    private static byte[] read(URL url) throws IOException {
+        try (InputStream in = url.openStream()) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int length;
+            while ((length = in.read(buffer)) != -1) {
+                out.write(buffer, 0, length);
+            }
+            return out.toByteArray();
+        }
+    }
+
+    private static String hash(byte[] content) {
+        byte[] digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1").digest(content);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        StringBuilder hex = new StringBuilder(digest.length * 2);
+        for (byte b : digest) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16));
+            hex.append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+
+    private class CachingJAXBContextFactory implements JAXBContextFactory {
+
+        private final JAXBContextFactory delegate;
+
+        CachingJAXBContextFactory(JAXBContextFactory delegate) {
+            this.delegate = delegate;
+        }
+
+        public JAXBRIContext createJAXBContext(
+                final SEIModel sei,
+                final List<Class> classesToBind,
+                final List<TypeReference> typeReferences) throws JAXBException {
+            ContextKey key = new ContextKey(sei.getTargetNamespace(), classesToBind, typeReferences);
+            try {
+                return getOrCreate(contexts, key, new Callable<JAXBRIContext>() {
+                    public JAXBRIContext call() throws JAXBException {
+                        return delegate.createJAXBContext(sei, classesToBind, typeReferences);
+                    }
+                });
+            } catch (WebServiceException e) {
+                if (e.getCause() instanceof JAXBException) {
+                    throw (JAXBException) e.getCause();
+                }
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Identifies the JAXB context built by {@link JAXBContextFactory#DEFAULT},
+     * which only depends on the target namespace, classes and type references.
+     */
+    private static class ContextKey {
+
+        private final String targetNamespace;
+
+        private final Set<Class> classes;
+
+        private final Set<TypeReference> typeReferences;
+
+        ContextKey(String targetNamespace, List<Class> classes, List<TypeReference> typeReferences) {
+            this.targetNamespace = targetNamespace;
+            this.classes = new HashSet<>(classes);
+            this.typeReferences = new HashSet<>(typeReferences);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof ContextKey)) {
+                return false;
+            }
+            ContextKey that = (ContextKey) o;
+            return (targetNamespace == null ? that.targetNamespace == null : targetNamespace.equals(that.targetNamespace))
+                    && classes.equals(that.classes)
+                    && typeReferences.equals(that.typeReferences);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = targetNamespace != null ? targetNamespace.hashCode() : 0;
+            result = 31 * result + classes.hashCode();
+            result = 31 * result + typeReferences.hashCode();
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            return "JAXB context for " + targetNamespace + " " + classes;
+        }
+    }
+}
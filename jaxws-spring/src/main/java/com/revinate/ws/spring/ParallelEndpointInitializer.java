@@ -0,0 +1,148 @@
+package com.revinate.ws.spring;
+
+import com.sun.xml.ws.transport.http.servlet.SpringBinding;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.BeanCreationException;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.BeanFactoryUtils;
+import org.springframework.beans.factory.BeanFactoryAware;
+import org.springframework.beans.factory.ListableBeanFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Eagerly creates the {@link com.sun.xml.ws.api.server.WSEndpoint}s of all
+ * {@link SpringService} beans in parallel, once all singletons of the
+ * application context have been instantiated.
+ *
+ * <p>
+ * Endpoint creation is usually the most expensive part of starting a
+ * context with many ports. To benefit from this initializer, bind services
+ * with {@link com.sun.xml.ws.transport.http.servlet.SpringBinding#setServiceFactory(SpringService)},
+ * so that the endpoints are not created one after another while the bindings
+ * are being configured. Services only bound
+ * {@link SpringBinding#setLazy(boolean) lazily} are left to be created when
+ * first requested.
+ */
+public class ParallelEndpointInitializer implements BeanFactoryAware, SmartInitializingSingleton {
+
+    private static final Log logger = LogFactory.getLog(ParallelEndpointInitializer.class);
+
+    private ListableBeanFactory beanFactory;
+
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+
+    public void setBeanFactory(BeanFactory beanFactory) throws BeansException {
+        if (!(beanFactory instanceof ListableBeanFactory)) {
+            throw new IllegalArgumentException("ParallelEndpointInitializer requires a ListableBeanFactory");
+        }
+        this.beanFactory = (ListableBeanFactory) beanFactory;
+    }
+
+    /**
+     * Sets the number of threads creating endpoints.
+     * Defaults to the number of available processors.
+     */
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    public void afterSingletonsInstantiated() {
+        Map<String, SpringService> services = new LinkedHashMap<>(beanFactory.getBeansOfType(SpringService.class));
+        services.values().removeAll(getLazyServices(beanFactory));
+        if (services.isEmpty()) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        List<String> beanNames = new ArrayList<>(services.size());
+        List<Callable<Long>> tasks = new ArrayList<>(services.size());
+        for (Map.Entry<String, SpringService> entry : services.entrySet()) {
+            beanNames.add(BeanFactoryUtils.transformedBeanName(entry.getKey()));
+            tasks.add(new EndpointCreation(entry.getValue(), classLoader));
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            List<Future<Long>> results = pool.invokeAll(tasks);
+            for (int i = 0; i < results.size(); i++) {
+                String beanName = beanNames.get(i);
+                try {
+                    long elapsed = results.get(i).get();
+                    logger.info("Created endpoint for " + beanName + " in "
+                            + TimeUnit.NANOSECONDS.toMillis(elapsed) + " ms");
+                } catch (ExecutionException e) {
+                    throw new BeanCreationException(beanName, "Failed to create endpoint", e.getCause());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BeanCreationException("Interrupted while creating endpoints", e);
+        } finally {
+            pool.shutdown();
+        }
+
+        logger.info("Created " + services.size() + " endpoints in "
+                + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+    }
+
+    /**
+     * Returns the services that are only bound by lazy bindings, and are
+     * created when first requested instead.
+     */
+    static Set<SpringService> getLazyServices(ListableBeanFactory beanFactory) {
+        Set<SpringService> lazy = Collections.newSetFromMap(new IdentityHashMap<SpringService, Boolean>());
+        Set<SpringService> eager = Collections.newSetFromMap(new IdentityHashMap<SpringService, Boolean>());
+        for (SpringBinding binding : beanFactory.getBeansOfType(SpringBinding.class).values()) {
+            if (binding.getServiceFactory() != null) {
+                (binding.isLazy() ? lazy : eager).add(binding.getServiceFactory());
+            }
+        }
+        lazy.removeAll(eager);
+        return lazy;
+    }
+
+    /**
+     * Creates the endpoint of a {@link SpringService}, and returns the elapsed
+     * time in nanoseconds.
+     */
+    private static class EndpointCreation implements Callable<Long> {
+
+        private final SpringService service;
+
+        private final ClassLoader classLoader;
+
+        EndpointCreation(SpringService service, ClassLoader classLoader) {
+            this.service = service;
+            this.classLoader = classLoader;
+        }
+
+        public Long call() throws Exception {
+            Thread thread = Thread.currentThread();
+            ClassLoader previous = thread.getContextClassLoader();
+            thread.setContextClassLoader(classLoader);
+            try {
+                long start = System.nanoTime();
+                service.getObject();
+                return System.nanoTime() - start;
+            } finally {
+                thread.setContextClassLoader(previous);
+            }
+        }
+    }
+}
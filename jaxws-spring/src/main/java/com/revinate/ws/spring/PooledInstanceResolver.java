@@ -0,0 +1,171 @@
+package com.revinate.ws.spring;
+
+import com.sun.istack.NotNull;
+import com.sun.xml.ws.api.message.Packet;
+import com.sun.xml.ws.api.server.AbstractInstanceResolver;
+import com.sun.xml.ws.api.server.InstanceResolver;
+import com.sun.xml.ws.api.server.ResourceInjector;
+import com.sun.xml.ws.api.server.WSEndpoint;
+import com.sun.xml.ws.api.server.WSWebServiceContext;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.BeanDefinitionStoreException;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.BeanFactoryAware;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.config.ConfigurableBeanFactory;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link InstanceResolver} that serves each request with an instance of a
+ * prototype-scoped Spring bean, borrowed from a pool and returned to it when
+ * the request completes. This lets endpoint beans keep per-request state
+ * without synchronization, and without creating a new bean for every request.
+ *
+ * <p>
+ * Borrowing and returning are lock-free. When the pool is empty, a new
+ * instance is created; when it already holds {@link #setMaxSize(int) maxSize}
+ * idle instances, returned instances are destroyed.
+ *
+ * @see SpringService#setInstanceResolver(InstanceResolver)
+ */
+public class PooledInstanceResolver<T> extends AbstractInstanceResolver<T>
+        implements BeanFactoryAware, InitializingBean {
+
+    private BeanFactory beanFactory;
+
+    private String targetBeanName;
+
+    private int minSize = 0;
+
+    private int maxSize = 8;
+
+    private final ConcurrentLinkedQueue<T> pool = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Number of instances in {@link #pool}. Tracked separately because
+     * {@link ConcurrentLinkedQueue#size()} is not a constant-time operation.
+     */
+    private final AtomicInteger idle = new AtomicInteger();
+
+    private WSWebServiceContext webServiceContext;
+
+    private ResourceInjector resourceInjector;
+
+    public void setBeanFactory(BeanFactory beanFactory) throws BeansException {
+        this.beanFactory = beanFactory;
+    }
+
+    /**
+     * Name of the prototype-scoped bean that implements the web service methods.
+     * Required.
+     */
+    public void setTargetBeanName(String targetBeanName) {
+        this.targetBeanName = targetBeanName;
+    }
+
+    /**
+     * Number of instances created when the endpoint starts.
+     * Defaults to <code>0</code>.
+     */
+    public void setMinSize(int minSize) {
+        this.minSize = minSize;
+    }
+
+    /**
+     * Maximum number of idle instances kept in the pool.
+     * Defaults to <code>8</code>.
+     */
+    public void setMaxSize(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Returns the number of idle instances in the pool.
+     */
+    public int getIdleCount() {
+        return idle.get();
+    }
+
+    /**
+     * Returns the type of the target bean, or {@code null} if it cannot be
+     * determined yet.
+     */
+    public Class<?> getTargetType() {
+        if (beanFactory == null || targetBeanName == null) {
+            return null;
+        }
+        return beanFactory.getType(targetBeanName);
+    }
+
+    public void afterPropertiesSet() {
+        if (targetBeanName == null) {
+            throw new IllegalArgumentException("Property 'targetBeanName' is required");
+        }
+        if (maxSize < minSize) {
+            throw new IllegalArgumentException("Property 'maxSize' must not be less than 'minSize'");
+        }
+        if (!beanFactory.isPrototype(targetBeanName)) {
+            throw new BeanDefinitionStoreException("Cannot pool non-prototype bean with name '"
+                    + targetBeanName + "'");
+        }
+    }
+
+    @Override
+    public void start(@NotNull WSWebServiceContext wsc, @NotNull WSEndpoint endpoint) {
+        this.webServiceContext = wsc;
+        this.resourceInjector = getResourceInjector(endpoint);
+        for (int i = 0; i < minSize; i++) {
+            release(create());
+        }
+    }
+
+    @Override
+    public @NotNull T resolve(@NotNull Packet request) {
+        T instance = pool.poll();
+        if (instance == null) {
+            return create();
+        }
+        idle.decrementAndGet();
+        return instance;
+    }
+
+    @Override
+    public void postInvoke(@NotNull Packet request, @NotNull T servant) {
+        release(servant);
+    }
+
+    @Override
+    public void dispose() {
+        T instance;
+        while ((instance = pool.poll()) != null) {
+            idle.decrementAndGet();
+            destroy(instance);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private T create() {
+        T instance = (T) beanFactory.getBean(targetBeanName);
+        if (resourceInjector != null) {
+            resourceInjector.inject(webServiceContext, instance);
+        }
+        return instance;
+    }
+
+    private void release(T instance) {
+        if (idle.incrementAndGet() <= maxSize) {
+            pool.offer(instance);
+        } else {
+            idle.decrementAndGet();
+            destroy(instance);
+        }
+    }
+
+    private void destroy(T instance) {
+        if (beanFactory instanceof ConfigurableBeanFactory) {
+            ((ConfigurableBeanFactory) beanFactory).destroyBean(targetBeanName, instance);
+        }
+    }
+}
@@ -1,25 +1,94 @@
 package com.revinate.ws.spring;
 
 import com.sun.xml.ws.api.server.SDDocumentSource;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.Enumeration;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
 import java.util.jar.JarEntry;
 import java.util.jar.JarInputStream;
 
 public class SDDocumentCollector {
 
+    private static final Log logger = LogFactory.getLog(SDDocumentCollector.class);
+
+    private static final String[] DEFAULT_INCLUDES = {"**.wsdl", "**.xsd"};
+
+    private static final String[] DEFAULT_EXCLUDES = {};
+
+    /**
+     * Orders the collected documents by URL, so that the result does not
+     * depend on the order in which they were found.
+     */
+    private static final Comparator<URL> URL_ORDER = new Comparator<URL>() {
+        public int compare(URL url1, URL url2) {
+            return url1.toExternalForm().compareTo(url2.toExternalForm());
+        }
+    };
+
     public static Map<URL, Object> collectDocs(String dirPath, ClassLoader cl) {
-        Map<URL, Object> docs = new HashMap<>();
+        return collectDocs(dirPath, cl, DEFAULT_INCLUDES, DEFAULT_EXCLUDES);
+    }
+
+    /**
+     * Collects the documents under <code>dirPath</code> whose path, relative
+     * to <code>dirPath</code>, matches one of the <code>includes</code> and
+     * none of the <code>excludes</code> glob patterns, as defined by
+     * {@link java.nio.file.FileSystem#getPathMatcher(String)}. The default
+     * includes are <code>**.wsdl</code> and <code>**.xsd</code>.
+     *
+     * <p>
+     * Exploded directories are walked in parallel, one task per subdirectory,
+     * and subdirectories matching an exclude pattern are skipped.
+     *
+     * @return the documents, ordered by URL
+     */
+    public static ConcurrentNavigableMap<URL, Object> collectDocs(
+            String dirPath,
+            ClassLoader cl,
+            String[] includes,
+            String[] excludes) {
+        long start = System.nanoTime();
+        ConcurrentNavigableMap<URL, Object> docs = new ConcurrentSkipListMap<>(URL_ORDER);
+        DocumentMatcher matcher = new DocumentMatcher(includes, excludes);
         URL url = cl.getResource(dirPath);
         if (url != null) {
             if ("file".equals(url.getProtocol())) {
@@ -29,7 +98,7 @@ public class SDDocumentCollector {
                 } catch (URISyntaxException e) {
                     file = new File(url.getPath());
                 }
-                collectDir(file, docs);
+                collectDir(file.toPath(), matcher, docs);
             } else if ("jar".equals(url.getProtocol())) {
                 String jarUrlString;
                 try {
@@ -40,43 +109,157 @@ public class SDDocumentCollector {
 
                 String[] pathParts = jarUrlString.split("!");
                 if (pathParts.length >= 2) {
+                    File file;
                     try {
-                        File file;
-                        try {
-                            file = new File(new URI(pathParts[0]));
-                        } catch (URISyntaxException e) {
-                            file = new File(pathParts[0]);
-                        }
-                        InputStream inputStream = new FileInputStream(file);
-                        String jarPathUrlString = jarUrlString.substring(0, jarUrlString.lastIndexOf('!'));
-                        collectJar(inputStream, pathParts, jarPathUrlString, docs);
-                    } catch (IOException e) {
-                        // do nothing
+                        file = new File(new URI(pathParts[0]));
+                    } catch (URISyntaxException e) {
+                        file = new File(pathParts[0]);
                     }
+                    String jarPathUrlString = jarUrlString.substring(0, jarUrlString.lastIndexOf('!'));
+                    collectJar(file, pathParts, jarPathUrlString, matcher, docs);
                 }
             }
         }
+        logCollected(docs, dirPath, start);
         return docs;
     }
 
-    private static void collectDir(File dir, Map<URL, Object> docs) {
-        File[] files = dir.listFiles();
-        if (files != null) {
-            for (File file : files) {
-                if (file.isDirectory()) {
-                    collectDir(file, docs);
-                } else {
-                    String extension = getExtension(file.getName());
-                    if ("wsdl".equals(extension) || "xsd".equals(extension)) {
-                        try {
-                            URL url = file.toURI().toURL();
-                            docs.put(url, SDDocumentSource.create(url));
-                        } catch (MalformedURLException e) {
-                            // do nothing
-                        }
+    /**
+     * Collects the documents under <code>dirPath</code> listed in the
+     * {@link SDDocumentIndexer indexes} found on the classpath, without
+     * scanning directories or jar files. Falls back to
+     * {@link #collectDocs(String, ClassLoader)} if no indexed document
+     * is found under <code>dirPath</code>.
+     */
+    public static Map<URL, Object> collectIndexedDocs(String dirPath, ClassLoader cl) {
+        long start = System.nanoTime();
+        Map<URL, Object> docs = new ConcurrentSkipListMap<>(URL_ORDER);
+        String prefix = stripLeadingSlash(dirPath);
+        if (!prefix.isEmpty() && !prefix.endsWith("/")) {
+            prefix = prefix + "/";
+        }
+
+        try {
+            Enumeration<URL> indexes = cl.getResources(SDDocumentIndexer.INDEX_LOCATION);
+            while (indexes.hasMoreElements()) {
+                collectIndex(indexes.nextElement(), prefix, docs);
+            }
+        } catch (IOException e) {
+            // do nothing
+        }
+
+        if (docs.isEmpty()) {
+            return collectDocs(dirPath, cl);
+        }
+        logCollected(docs, dirPath, start);
+        return docs;
+    }
+
+    private static void logCollected(Map<URL, Object> docs, String dirPath, long start) {
+        if (logger.isDebugEnabled()) {
+            logger.debug("Collected " + docs.size() + " documents under " + dirPath + " in "
+                    + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+        }
+    }
+
+    private static void collectIndex(URL index, String prefix, Map<URL, Object> docs) throws IOException {
+        // documents are located relative to the classpath root containing the index
+        String indexUrlString = index.toString();
+        String baseUrlString = indexUrlString.substring(0,
+                indexUrlString.length() - SDDocumentIndexer.INDEX_LOCATION.length());
+
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(index.openStream(), StandardCharsets.UTF_8))) {
+            String name;
+            while ((name = reader.readLine()) != null) {
+                if (!name.isEmpty() && name.startsWith(prefix)) {
+                    try {
+                        URL url = new URL(baseUrlString + name);
+                        docs.put(url, SDDocumentSource.create(url));
+                    } catch (MalformedURLException e) {
+                        // do nothing
+                    }
+                }
+            }
+        }
+    }
+
+    private static void collectDir(Path dir, DocumentMatcher matcher, Map<URL, Object> docs) {
+        BasicFileAttributes attrs;
+        try {
+            attrs = Files.readAttributes(dir, BasicFileAttributes.class);
+        } catch (IOException e) {
+            return;
+        }
+        if (!attrs.isDirectory()) {
+            return;
+        }
+
+        Set<Object> visited = Collections.newSetFromMap(new ConcurrentHashMap<Object, Boolean>());
+        visited.add(DirectoryWalk.directoryKey(dir, attrs));
+        ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        try {
+            pool.invoke(new DirectoryWalk(dir, dir, matcher, visited, docs));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Collects the documents of a jar file by reading its central directory,
+     * which avoids inflating unrelated entries and reads nested jars in place.
+     * Falls back to reading the jar sequentially if it cannot be mapped.
+     */
+    private static void collectJar(
+            File file,
+            String[] pathParts,
+            String jarPathUrlString,
+            DocumentMatcher matcher,
+            Map<URL, Object> docs) {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            collectZip(ZipCentralDirectory.map(channel), pathParts, 1, "", jarPathUrlString, matcher, docs);
+            return;
+        } catch (IOException e) {
+            // fall back to reading the jar sequentially
+        }
+
+        try (InputStream inputStream = new FileInputStream(file)) {
+            collectJar(inputStream, pathParts, jarPathUrlString, matcher, docs);
+        } catch (IOException e) {
+            // do nothing
+        }
+    }
+
+    private static void collectZip(
+            ZipCentralDirectory zip,
+            String[] pathParts,
+            int index,
+            String directory,
+            String jarPathUrlString,
+            DocumentMatcher matcher,
+            Map<URL, Object> docs) throws IOException {
+        String nextPathPart = directory + stripLeadingSlash(pathParts[index]);
+
+        if (index == pathParts.length - 1) {
+            for (String name : zip.getNames(nextPathPart)) {
+                if (matcher.matches(name.substring(nextPathPart.length()))) {
+                    String urlString = jarPathUrlString + "!/" + name.substring(directory.length());
+                    try {
+                        URL url = new URI("jar", urlString, null).toURL();
+                        docs.put(url, SDDocumentSource.create(url));
+                    } catch (URISyntaxException | MalformedURLException e) {
+                        // do nothing
                     }
                 }
             }
+        } else {
+            ByteBuffer nested = zip.getContent(nextPathPart);
+            if (nested != null) {
+                collectZip(new ZipCentralDirectory(nested), pathParts, index + 1, "", jarPathUrlString, matcher, docs);
+            } else {
+                // not a nested jar but a directory, such as BOOT-INF/classes in a Spring Boot jar
+                collectZip(zip, pathParts, index + 1, nextPathPart + "/", jarPathUrlString, matcher, docs);
+            }
         }
     }
 
@@ -84,6 +267,7 @@ public class SDDocumentCollector {
             InputStream inputStream,
             String[] pathParts,
             String jarPathUrlString,
+            DocumentMatcher matcher,
             Map<URL, Object> docs) {
         String nextPathPart = stripLeadingSlash(pathParts[1]);
 
@@ -95,8 +279,7 @@ public class SDDocumentCollector {
                     if (!entry.isDirectory()) {
                         String name = entry.getName();
                         if (name.startsWith(nextPathPart)) {
-                            String extension = getExtension(name);
-                            if ("wsdl".equals(extension) || "xsd".equals(extension)) {
+                            if (matcher.matches(name.substring(nextPathPart.length()))) {
                                 String urlString = jarPathUrlString + "!/" + name;
                                 try {
                                     URL url = new URI("jar", urlString, null).toURL();
@@ -114,7 +297,7 @@ public class SDDocumentCollector {
                         String name = entry.getName();
                         if (name.equals(nextPathPart)) {
                             String[] subPathParts = Arrays.copyOfRange(pathParts, 1, pathParts.length);
-                            collectJar(jarInputStream, subPathParts, jarPathUrlString, docs);
+                            collectJar(jarInputStream, subPathParts, jarPathUrlString, matcher, docs);
                             break;
                         }
                     }
@@ -125,14 +308,6 @@ public class SDDocumentCollector {
         }
     }
 
-    private static String getExtension(String name) {
-        int index = name.lastIndexOf(".");
-        if (index > 0) {
-            return name.substring(index + 1);
-        }
-        return "";
-    }
-
     private static String stripLeadingSlash(String input) {
         if (input.startsWith("/")) {
             return input.substring(1);
@@ -140,4 +315,141 @@ public class SDDocumentCollector {
             return input;
         }
     }
+
+    /**
+     * Matches document paths, relative to the collected directory, against
+     * the include and exclude glob patterns.
+     */
+    private static class DocumentMatcher {
+
+        private final List<PathMatcher> includes;
+
+        private final List<PathMatcher> excludes;
+
+        DocumentMatcher(String[] includes, String[] excludes) {
+            this.includes = compile(includes);
+            this.excludes = compile(excludes);
+        }
+
+        boolean matches(Path path) {
+            return matchesAny(includes, path) && !matchesAny(excludes, path);
+        }
+
+        boolean matches(String name) {
+            try {
+                return matches(Paths.get(stripLeadingSlash(name)));
+            } catch (InvalidPathException e) {
+                return false;
+            }
+        }
+
+        boolean isExcluded(Path path) {
+            return matchesAny(excludes, path);
+        }
+
+        private static boolean matchesAny(List<PathMatcher> matchers, Path path) {
+            for (PathMatcher matcher : matchers) {
+                if (matcher.matches(path)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private static List<PathMatcher> compile(String[] patterns) {
+            List<PathMatcher> matchers = new ArrayList<>(patterns.length);
+            for (String pattern : patterns) {
+                matchers.add(FileSystems.getDefault().getPathMatcher("glob:" + pattern));
+            }
+            return matchers;
+        }
+    }
+
+    /**
+     * Walks one directory, collecting its documents and forking a new walk
+     * for each of its subdirectories.
+     */
+    private static class DirectoryWalk extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Path root;
+
+        private final Path dir;
+
+        private final DocumentMatcher matcher;
+
+        /**
+         * Keys of the directories already walked, to avoid cycles through
+         * symbolic links.
+         */
+        private final Set<Object> visited;
+
+        private final Map<URL, Object> docs;
+
+        DirectoryWalk(Path root, Path dir, DocumentMatcher matcher, Set<Object> visited, Map<URL, Object> docs) {
+            this.root = root;
+            this.dir = dir;
+            this.matcher = matcher;
+            this.visited = visited;
+            this.docs = docs;
+        }
+
+        @Override
+        protected void compute() {
+            final List<DirectoryWalk> subWalks = new ArrayList<>();
+            try {
+                Files.walkFileTree(dir, EnumSet.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE,
+                        new SimpleFileVisitor<Path>() {
+                    @Override
+                    public FileVisitResult preVisitDirectory(Path subDir, BasicFileAttributes attrs) {
+                        if (subDir.equals(dir)) {
+                            return FileVisitResult.CONTINUE;
+                        }
+                        if (!matcher.isExcluded(root.relativize(subDir)) && visited.add(directoryKey(subDir, attrs))) {
+                            DirectoryWalk subWalk = new DirectoryWalk(root, subDir, matcher, visited, docs);
+                            subWalk.fork();
+                            subWalks.add(subWalk);
+                        }
+                        return FileVisitResult.SKIP_SUBTREE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                        if (attrs.isRegularFile() && matcher.matches(root.relativize(file))) {
+                            try {
+                                URL url = file.toFile().toURI().toURL();
+                                docs.put(url, SDDocumentSource.create(url));
+                            } catch (MalformedURLException e) {
+                                // do nothing
+                            }
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFileFailed(Path file, IOException e) {
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+            } catch (IOException e) {
+                // do nothing
+            }
+
+            for (DirectoryWalk subWalk : subWalks) {
+                subWalk.join();
+            }
+        }
+
+        static Object directoryKey(Path dir, BasicFileAttributes attrs) {
+            if (attrs.fileKey() != null) {
+                return attrs.fileKey();
+            }
+            try {
+                return dir.toRealPath();
+            } catch (IOException e) {
+                return dir.toAbsolutePath().normalize();
+            }
+        }
+    }
 }
@@ -0,0 +1,115 @@
+package com.revinate.ws.spring;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Writes an index of the WSDL and XSD documents in a resources directory at
+ * build time, so that {@link SDDocumentCollector#collectIndexedDocs(String, ClassLoader)}
+ * can find them at runtime without scanning directories or jar files.
+ *
+ * <p>
+ * The index is written to {@value #INDEX_LOCATION} in the resources directory,
+ * and lists the resource path of each document, one per line. This class only
+ * depends on the JDK, so that it can run on the build classpath:
+ *
+ * <pre>
+ * java com.revinate.ws.spring.SDDocumentIndexer &lt;resourcesDir&gt; [&lt;root&gt; ...]
+ * </pre>
+ */
+public class SDDocumentIndexer {
+
+    /**
+     * Location of the index, relative to the root of the classpath.
+     */
+    public static final String INDEX_LOCATION = "META-INF/jaxws-spring/sddocuments.index";
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: SDDocumentIndexer <resourcesDir> [<root> ...]");
+            System.exit(1);
+        }
+        List<String> roots = Arrays.asList(args).subList(1, args.length);
+        File index = writeIndex(new File(args[0]), roots);
+        System.out.println("Wrote " + index);
+    }
+
+    /**
+     * Writes the index of the documents found under the given roots of a
+     * resources directory.
+     *
+     * @param resourcesDir the resources directory, which becomes the root of the classpath
+     * @param roots the resource paths of the directories to index, or an empty
+     * collection to index the whole resources directory
+     *
+     * @return the index file
+     */
+    public static File writeIndex(File resourcesDir, List<String> roots) throws IOException {
+        List<String> names = listDocuments(resourcesDir.toPath(), roots);
+        Collections.sort(names);
+
+        File index = new File(resourcesDir, INDEX_LOCATION);
+        Files.createDirectories(index.getParentFile().toPath());
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+                Files.newOutputStream(index.toPath()), StandardCharsets.UTF_8))) {
+            for (String name : names) {
+                writer.write(name);
+                writer.write('\n');
+            }
+        }
+        return index;
+    }
+
+    private static List<String> listDocuments(final Path resourcesDir, List<String> roots) throws IOException {
+        final List<String> names = new ArrayList<>();
+        List<Path> starts = new ArrayList<>();
+        if (roots.isEmpty()) {
+            starts.add(resourcesDir);
+        } else {
+            for (String root : roots) {
+                starts.add(resourcesDir.resolve(root));
+            }
+        }
+
+        for (Path start : starts) {
+            if (!Files.isDirectory(start)) {
+                continue;
+            }
+            Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    String fileName = file.getFileName().toString();
+                    if (fileName.endsWith(".wsdl") || fileName.endsWith(".xsd")) {
+                        names.add(toResourceName(resourcesDir.relativize(file)));
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        }
+        return names;
+    }
+
+    private static String toResourceName(Path relativePath) {
+        StringBuilder name = new StringBuilder();
+        for (Path part : relativePath) {
+            if (name.length() > 0) {
+                name.append('/');
+            }
+            name.append(part.toString());
+        }
+        return name.toString();
+    }
+}
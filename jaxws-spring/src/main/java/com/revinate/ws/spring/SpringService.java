@@ -36,15 +36,33 @@
 package com.revinate.ws.spring;
 
 import com.sun.istack.NotNull;
+import com.revinate.ws.spring.cache.CoalescingTubelineAssembler;
+import com.revinate.ws.spring.cache.ResponseCache;
+import com.revinate.ws.spring.cache.ResponseCacheTubelineAssembler;
+import com.revinate.ws.spring.metrics.JmxMetricsRegistry;
+import com.revinate.ws.spring.metrics.MetricsRegistry;
+import com.revinate.ws.spring.metrics.MetricsTubelineAssembler;
+import com.revinate.ws.spring.startup.StartupPhase;
+import com.revinate.ws.spring.startup.StartupProfiler;
 import com.sun.xml.ws.api.BindingID;
 import com.sun.xml.ws.api.WSBinding;
+import com.sun.xml.ws.api.fastinfoset.FastInfosetFeature;
+import com.sun.xml.ws.api.message.Packet;
+import com.sun.xml.ws.api.pipe.ClientTubeAssemblerContext;
+import com.sun.xml.ws.api.pipe.ServerTubeAssemblerContext;
+import com.sun.xml.ws.api.pipe.Tube;
 import com.sun.xml.ws.api.pipe.TubelineAssembler;
 import com.sun.xml.ws.api.pipe.TubelineAssemblerFactory;
 import com.sun.xml.ws.api.server.*;
 import com.sun.xml.ws.binding.BindingImpl;
+import com.sun.xml.ws.developer.StreamingAttachmentFeature;
+import com.sun.xml.ws.developer.UsesJAXBContextFeature;
 import com.sun.xml.ws.server.EndpointFactory;
 import com.sun.xml.ws.server.ServerRtException;
 import com.sun.xml.ws.util.xml.XmlUtil;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.BeanNameAware;
 import org.springframework.beans.factory.FactoryBean;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.web.context.ServletContextAware;
@@ -53,23 +71,38 @@ import org.xml.sax.EntityResolver;
 import javax.servlet.ServletContext;
 import javax.xml.namespace.QName;
 import javax.xml.ws.BindingType;
+import javax.xml.ws.WebServiceContext;
 import javax.xml.ws.WebServiceFeature;
 import javax.xml.ws.handler.Handler;
 import javax.xml.ws.http.HTTPBinding;
 import javax.xml.ws.soap.SOAPBinding;
 import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
 import java.net.MalformedURLException;
+import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Endpoint. A service object and the infrastructure around it.
  *
  * @author Kohsuke Kawaguchi
  */
-public class SpringService implements FactoryBean<WSEndpoint>, ServletContextAware, InitializingBean {
+public class SpringService implements FactoryBean<WSEndpoint>, ServletContextAware, InitializingBean,
+        BeanNameAware {
+
+    private static final Log logger = LogFactory.getLog(SpringService.class);
 
     @NotNull
     private Class<?> implType;
@@ -129,6 +162,21 @@ public class SpringService implements FactoryBean<WSEndpoint>, ServletContextAwa
     private BindingID bindingID;
     private List<WebServiceFeature> features;
 
+    /**
+     * @see #setFastInfoset(Boolean)
+     */
+    private Boolean fastInfoset;
+
+    /**
+     * @see #setAttachmentMemoryThreshold(long)
+     */
+    private long attachmentMemoryThreshold = -1;
+
+    /**
+     * @see #setAttachmentDirectory(String)
+     */
+    private String attachmentDirectory;
+
     /**
      * Technically speaking, handlers belong to
      * {@link WSBinding} and as such it should be configured there,
@@ -140,6 +188,79 @@ public class SpringService implements FactoryBean<WSEndpoint>, ServletContextAwa
 
     private ServletContext servletContext;
 
+    /**
+     * Maximum number of concurrent invocations of the endpoint, or
+     * <code>0</code> if unlimited.
+     *
+     * @see #setMaxConcurrency(int)
+     */
+    private int maxConcurrency;
+
+    /**
+     * Maximum time in milliseconds to wait when {@link #maxConcurrency} is reached.
+     *
+     * @see #setAcquireTimeout(long)
+     */
+    private long acquireTimeout;
+
+    /**
+     * Cache of documents and JAXB contexts shared with other endpoints.
+     *
+     * @see #setMetadataCache(MetadataCache)
+     */
+    private MetadataCache metadataCache;
+
+    /**
+     * Registry of the metrics recorded for this endpoint.
+     *
+     * @see #setMetricsRegistry(MetricsRegistry)
+     */
+    private MetricsRegistry metricsRegistry;
+
+    /**
+     * Profiler recording the startup phases of this endpoint.
+     *
+     * @see #setStartupProfiler(StartupProfiler)
+     */
+    private StartupProfiler startupProfiler;
+
+    /**
+     * Names of the operations whose responses are cached.
+     *
+     * @see #setCacheableOperations(Collection)
+     */
+    private Set<QName> cacheableOperations;
+
+    /**
+     * @see #setResponseCache(ResponseCache)
+     */
+    private ResponseCache responseCache;
+
+    /**
+     * Names of the operations whose concurrent identical requests share
+     * one invocation.
+     *
+     * @see #setCoalescedOperations(Collection)
+     */
+    private Set<QName> coalescedOperations;
+
+    /**
+     * @see #setCoalescingTimeout(long)
+     */
+    private long coalescingTimeout = 30000;
+
+    /**
+     * @see #setWarmUpOperations(Collection)
+     */
+    private Set<QName> warmUpOperations;
+
+    /**
+     * @see #setWarmUpRequests(List)
+     */
+    private List<String> warmUpRequests;
+
+    private String beanName;
+
     /**
      * Set automatically by Spring if JAX-WS is used inside web container.
      */
@@ -166,6 +287,21 @@ public class SpringService implements FactoryBean<WSEndpoint>, ServletContextAwa
         }
     }
 
+    /**
+     * Sets the {@link InstanceResolver} that provides the bean implementing
+     * the web service methods for each request, such as a
+     * {@link PooledInstanceResolver}.
+     * <p>
+     * The implementation class must be {@link #setImpl(Class) set explicitly},
+     * unless it can be determined from a {@link PooledInstanceResolver}.
+     */
+    public void setInstanceResolver(InstanceResolver<?> instanceResolver) {
+        this.invoker = instanceResolver.createInvoker();
+        if (this.implType == null && instanceResolver instanceof PooledInstanceResolver) {
+            this.implType = ((PooledInstanceResolver<?>) instanceResolver).getTargetType();
+        }
+    }
+
     /**
      * Sets {@link Invoker} for this endpoint.
      * Defaults to {@link InstanceResolver#createDefault(Class) the standard invoker}.
@@ -174,6 +310,165 @@ public class SpringService implements FactoryBean<WSEndpoint>, ServletContextAwa
         this.invoker = invoker;
     }
 
+    /**
+     * Sets the maximum number of concurrent invocations of this endpoint,
+     * so that a slow endpoint cannot use up the threads shared with other
+     * endpoints. Invocations over the limit wait for
+     * {@link #setAcquireTimeout(long) the acquire timeout}, and then fail
+     * with a SOAP fault.
+     * Defaults to <code>0</code>, which means unlimited.
+     *
+     * @see BulkheadInvoker
+     */
+    public void setMaxConcurrency(int maxConcurrency) {
+        this.maxConcurrency = maxConcurrency;
+    }
+
+    /**
+     * Sets the maximum time in milliseconds an invocation waits when the
+     * {@link #setMaxConcurrency(int) maximum concurrency} is reached.
+     * Defaults to <code>0</code>, which fails such invocations right away.
+     */
+    public void setAcquireTimeout(long acquireTimeout) {
+        this.acquireTimeout = acquireTimeout;
+    }
+
+    /**
+     * Sets the {@link MetadataCache} shared with the other endpoints of the
+     * application, so that the WSDL and schemas they have in common are only
+     * read and parsed once, and endpoints binding the same types share their
+     * JAXB context.
+     * <p>
+     * The JAXB context is only shared if the binding is not
+     * {@link #setBinding(WSBinding) configured externally}, and no
+     * {@link UsesJAXBContextFeature} is set.
+     * Defaults to {@code null}, in which case nothing is shared.
+     */
+    public void setMetadataCache(MetadataCache metadataCache) {
+        this.metadataCache = metadataCache;
+    }
+
+    /**
+     * Records request counts, fault and error counts, and latency
+     * distributions for each operation of this endpoint, in the given
+     * registry, such as a {@link JmxMetricsRegistry}.
+     * <p>
+     * The metrics are recorded by a tube put at the head of the tubeline
+     * created by the {@link #setAssembler(Object) assembler}.
+     * Defaults to {@code null}, in which case nothing is recorded.
+     *
+     * @see MetricsTubelineAssembler
+     */
+    public void setMetricsRegistry(MetricsRegistry metricsRegistry) {
+        this.metricsRegistry = metricsRegistry;
+    }
+
+    /**
+     * Records the time spent in each {@link StartupPhase} while creating
+     * this endpoint, under the name of this bean.
+     * Set automatically if a {@link StartupProfiler} bean is declared.
+     * Defaults to {@code null}, in which case nothing is recorded.
+     */
+    public void setStartupProfiler(StartupProfiler startupProfiler) {
+        this.startupProfiler = startupProfiler;
+    }
+
+    /**
+     * Marks operations as cacheable: their responses are stored in the
+     * {@link #setResponseCache(ResponseCache) response cache}, and identical
+     * requests are answered from it without unmarshalling the request or
+     * invoking the endpoint. Only mark operations whose response depends
+     * on nothing but the request payload.
+     * <p>
+     * Operations are identified by their WSDL name, such as
+     * <code>{http://www.revinate.com/sample}Fibonacci</code>.
+     * Defaults to {@code null}, in which case nothing is cached.
+     */
+    public void setCacheableOperations(Collection<QName> cacheableOperations) {
+        this.cacheableOperations = cacheableOperations != null
+                ? Collections.unmodifiableSet(new HashSet<>(cacheableOperations)) : null;
+    }
+
+    /**
+     * Sets the cache of the responses of the
+     * {@link #setCacheableOperations(Collection) cacheable operations}, which
+     * may be shared with other endpoints. Defaults to a {@link ResponseCache}
+     * with default settings, created for this endpoint.
+     */
+    public void setResponseCache(ResponseCache responseCache) {
+        this.responseCache = responseCache;
+    }
+
+    /**
+     * Coalesces concurrent identical requests to the given operations: while
+     * a request is being processed, requests with the same payload wait for
+     * it and get a copy of its response, so that the endpoint is invoked once
+     * instead of once per request. Only coalesce operations whose response
+     * depends on nothing but the request payload.
+     * <p>
+     * Operations are identified by their WSDL name, as in
+     * {@link #setCacheableOperations(Collection)}.
+     * Defaults to {@code null}, in which case nothing is coalesced.
+     *
+     * @see CoalescingTubelineAssembler
+     */
+    public void setCoalescedOperations(Collection<QName> coalescedOperations) {
+        this.coalescedOperations = coalescedOperations != null
+                ? Collections.unmodifiableSet(new HashSet<>(coalescedOperations)) : null;
+    }
+
+    /**
+     * Sets the maximum time in milliseconds a request to a
+     * {@link #setCoalescedOperations(Collection) coalesced operation} waits
+     * for the identical request in flight, after which it is processed on
+     * its own. Defaults to <code>30000</code>.
+     */
+    public void setCoalescingTimeout(long coalescingTimeout) {
+        this.coalescingTimeout = coalescingTimeout;
+    }
+
+    /**
+     * Sets operations to be called by an {@link EndpointWarmer} before the
+     * application starts, with requests generated from the endpoint model.
+     * Generated requests hold the request element of the operation, with
+     * no content, so that the operation is called with default arguments.
+     * Only list operations that can safely be called this way, or use
+     * {@link #setWarmUpRequests(List)} instead.
+     * <p>
+     * Operations are identified by their WSDL name, as in
+     * {@link #setCacheableOperations(Collection)}. Requests can only be
+     * generated for SEI-based endpoints.
+     * Defaults to {@code null}.
+     */
+    public void setWarmUpOperations(Collection<QName> warmUpOperations) {
+        this.warmUpOperations = warmUpOperations != null
+                ? Collections.unmodifiableSet(new HashSet<>(warmUpOperations)) : null;
+    }
+
+    Set<QName> getWarmUpOperations() {
+        return warmUpOperations;
+    }
+
+    /**
+     * Sets sample requests to be replayed by an {@link EndpointWarmer} before
+     * the application starts. Each request is the XML content of the SOAP
+     * body, declaring its own namespaces, such as
+     * <code>&lt;ns:fibonacci xmlns:ns="..."&gt;&lt;arg0&gt;10&lt;/arg0&gt;&lt;/ns:fibonacci&gt;</code>.
+     * Defaults to {@code null}.
+     */
+    public void setWarmUpRequests(List<String> warmUpRequests) {
+        this.warmUpRequests = warmUpRequests != null
+                ? Collections.unmodifiableList(new ArrayList<>(warmUpRequests)) : null;
+    }
+
+    List<String> getWarmUpRequests() {
+        return warmUpRequests;
+    }
+
+    public void setBeanName(String name) {
+        this.beanName = name;
+    }
+
     /**
      * Sets the {@link TubelineAssembler} or {@link TubelineAssemblerFactory} instance.
      * <p>
@@ -247,6 +542,53 @@ public class SpringService implements FactoryBean<WSEndpoint>, ServletContextAwa
         this.features = features;
     }
 
+    /**
+     * Sets whether this endpoint negotiates Fast Infoset, a binary encoding
+     * of XML that is smaller and faster to parse than text.
+     * <p>
+     * When enabled, requests with a <tt>application/fastinfoset</tt> content
+     * type (<tt>application/soap+fastinfoset</tt> with SOAP 1.2) are decoded
+     * as such, and answered in Fast Infoset, as are text requests whose
+     * <tt>Accept</tt> header includes that type; the JAX-WS client does so
+     * when its <tt>com.sun.xml.ws.client.ContentNegotiation</tt> property is
+     * set to <tt>pessimistic</tt>. Other clients keep getting text XML.
+     * When disabled, only text XML is accepted.
+     * <p>
+     * This configures a {@link FastInfosetFeature}, unless one is already
+     * set with {@link #setFeatures(List)}. Defaults to {@code null}, which
+     * keeps the default of JAX-WS: enabled if the Fast Infoset library is
+     * on the classpath.
+     */
+    public void setFastInfoset(Boolean fastInfoset) {
+        this.fastInfoset = fastInfoset;
+    }
+
+    /**
+     * Enables streaming of MIME attachments, such as MTOM uploads: the part
+     * of each attachment beyond the given size in bytes is spooled to a
+     * temporary file as it is read, so that heap use does not grow with the
+     * size of attachments. Attachments are handed to the endpoint as
+     * {@link com.sun.xml.ws.developer.StreamingDataHandler}s, which can be
+     * stored or mapped with {@link StreamingAttachments}.
+     * <p>
+     * This configures a {@link StreamingAttachmentFeature}, unless one is
+     * already set with {@link #setFeatures(List)}.
+     * Defaults to <code>-1</code>, which disables streaming.
+     */
+    public void setAttachmentMemoryThreshold(long attachmentMemoryThreshold) {
+        this.attachmentMemoryThreshold = attachmentMemoryThreshold;
+    }
+
+    /**
+     * Sets the directory attachments are spooled to.
+     * Defaults to the <tt>java.io.tmpdir</tt> directory.
+     *
+     * @see #setAttachmentMemoryThreshold(long)
+     */
+    public void setAttachmentDirectory(String attachmentDirectory) {
+        this.attachmentDirectory = attachmentDirectory;
+    }
+
     /**
      * {@link Handler}s for this endpoint.
      * Note that the order is significant.
@@ -308,62 +650,303 @@ public class SpringService implements FactoryBean<WSEndpoint>, ServletContextAwa
     /**
      * Lazily created {@link WSEndpoint} instance.
      */
-    private WSEndpoint<?> endpoint;
+    private volatile WSEndpoint<?> endpoint;
 
+    /**
+     * Invoker of {@link #endpoint}, or {@code null} if it has its own.
+     */
+    private EndpointInvoker endpointInvoker;
+
+    /**
+     * Whether the invoker shared by the endpoints has been started.
+     */
+    private final AtomicBoolean invokerStarted = new AtomicBoolean();
+
+    /**
+     * Returns the {@link WSEndpoint}, creating it on the first call.
+     * Safe to call from multiple threads; the endpoint is only created once.
+     *
+     * @see ParallelEndpointInitializer
+     */
     public WSEndpoint<?> getObject() throws Exception {
+        WSEndpoint<?> endpoint = this.endpoint;
         if (endpoint == null) {
-            if (binding == null) {
-                if (bindingID == null) {
-                    bindingID = BindingID.parse(implType);
+            synchronized (this) {
+                endpoint = this.endpoint;
+                if (endpoint == null) {
+                    long start = System.nanoTime();
+                    endpoint = createEndpoint(startupProfiler);
+                    this.endpoint = endpoint;
+                    if (logger.isDebugEnabled()) {
+                        logger.debug("Created endpoint " + endpoint.getPortName() + " in "
+                                + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+                    }
                 }
-                if (features == null || features.isEmpty()) {
-                    binding = BindingImpl.create(bindingID);
-                } else {
-                    binding = BindingImpl.create(bindingID,
-                            features.toArray(new WebServiceFeature[features.size()]));
+            }
+        }
+        return endpoint;
+    }
+
+    /**
+     * Returns whether the {@link WSEndpoint} has already been created.
+     */
+    public boolean isCreated() {
+        return endpoint != null;
+    }
+
+    /**
+     * Creates a new {@link WSEndpoint} from the current content of the WSDL
+     * and metadata documents, which {@link #getObject()} returns from then
+     * on. Nothing is changed if the creation fails.
+     *
+     * <p>
+     * The previous endpoint is left as is, so that the requests it is
+     * processing can complete, and must then be released with
+     * {@link #disposeReplaced(WSEndpoint)}. The new endpoint shares the bean,
+     * invoker and handlers of this service with the previous one, and does
+     * not start the invoker again: a bean set with {@link #setBean(Object)}
+     * keeps the resources injected when the first endpoint was created, and
+     * its <code>@PostConstruct</code> method is not called again. Reloads are
+     * not recorded by the {@link StartupProfiler}.
+     *
+     * @throws IllegalStateException if the binding is configured with
+     * {@link #setBinding(WSBinding)}, since it would be shared by both endpoints
+     * @see com.sun.xml.ws.transport.http.servlet.WSSpringServlet#setMetadataReloadDelay(long)
+     */
+    public synchronized WSEndpoint<?> reload() throws Exception {
+        if (binding != null) {
+            throw new IllegalStateException("Endpoints with an externally configured binding cannot be reloaded");
+        }
+        long start = System.nanoTime();
+        EndpointInvoker previousInvoker = this.endpointInvoker;
+        WSEndpoint<?> endpoint = createEndpoint(null);
+        this.endpoint = endpoint;
+        if (previousInvoker != null) {
+            previousInvoker.replaced = true;
+        }
+        if (logger.isDebugEnabled()) {
+            logger.debug("Reloaded endpoint " + endpoint.getPortName() + " in "
+                    + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+        }
+        return endpoint;
+    }
+
+    /**
+     * Disposes an endpoint created by this service before it was
+     * {@link #reload() reloaded}, once it has no request left to process.
+     * This releases its tubeline and JAXB context, without stopping the
+     * bean, invoker and handlers it shares with the current endpoint.
+     */
+    public void disposeReplaced(WSEndpoint<?> endpoint) {
+        if (endpoint == this.endpoint) {
+            throw new IllegalArgumentException("Endpoint " + endpoint.getPortName() + " is still in use");
+        }
+        // the binding is private to the endpoint, but its handlers are not
+        endpoint.getBinding().setHandlerChain(new ArrayList<Handler>());
+        endpoint.dispose();
+    }
+
+    /**
+     * Returns the files the configured WSDL and metadata documents are read
+     * from, leaving out documents read from jar files or other URLs, and
+     * an empty set if the endpoint cannot be {@link #reload() reloaded}.
+     */
+    public Set<Path> getMetadataFiles() {
+        if (binding != null) {
+            return Collections.emptySet();
+        }
+        List<SDDocumentSource> sources = new ArrayList<>();
+        if (primaryWsdl != null) {
+            sources.add(primaryWsdl);
+        }
+        if (metadata != null) {
+            sources.addAll(metadata);
+        }
+
+        Set<Path> files = new LinkedHashSet<>();
+        for (SDDocumentSource source : sources) {
+            URL url = source.getSystemId();
+            if (url != null && "file".equals(url.getProtocol())) {
+                try {
+                    files.add(Paths.get(url.toURI()));
+                } catch (URISyntaxException | IllegalArgumentException e) {
+                    // not a file after all
                 }
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Creates the endpoint, recording the time spent in each phase in
+     * <code>profiler</code>, unless it is {@code null}. Called holding the
+     * lock of this service.
+     */
+    private WSEndpoint<?> createEndpoint(StartupProfiler profiler) throws Exception {
+        long start = System.nanoTime();
+        WSBinding binding = this.binding;
+        if (binding == null) {
+            BindingID bindingID = this.bindingID;
+            if (bindingID == null) {
+                bindingID = BindingID.parse(implType);
+            }
+            List<WebServiceFeature> features = createFeatures();
+            if (features.isEmpty()) {
+                binding = BindingImpl.create(bindingID);
             } else {
-                if (bindingID != null) {
-                    throw new IllegalStateException("Both bindingID and binding are configured");
-                }
-                if (features != null) {
-                    throw new IllegalStateException("Both features and binding are configured");
-                }
+                binding = BindingImpl.create(bindingID,
+                        features.toArray(new WebServiceFeature[features.size()]));
+            }
+        } else {
+            if (bindingID != null) {
+                throw new IllegalStateException("Both bindingID and binding are configured");
+            }
+            if (features != null) {
+                throw new IllegalStateException("Both features and binding are configured");
+            }
+            if (attachmentMemoryThreshold >= 0) {
+                throw new IllegalStateException("Both attachment streaming and binding are configured");
             }
+            if (fastInfoset != null) {
+                throw new IllegalStateException("Both fastInfoset and binding are configured");
+            }
+        }
 
-            // configure handlers. doing this here ensures
-            // that we are not doing this more than once.
-            if (handlers != null) {
-                List<Handler> chain = binding.getHandlerChain();
-                chain.addAll(handlers);
-                binding.setHandlerChain(chain);
+        // configure handlers on the binding created for this endpoint.
+        // an externally configured one gets them in afterPropertiesSet().
+        if (handlers != null && binding != this.binding) {
+            addHandlers(binding);
+        }
+        start = profile(profiler, StartupPhase.BINDING_CREATION, start);
+
+        SDDocumentSource primaryWsdl = this.primaryWsdl;
+        if (primaryWsdl == null) {
+            // attempt to find it on the impl class.
+            EndpointFactory.verifyImplementorClass(implType, null);
+            String wsdlLocation = EndpointFactory.getWsdlLocation(implType);
+            if (wsdlLocation != null) {
+                primaryWsdl = convertStringToSource(wsdlLocation);
             }
+        }
 
-            if (primaryWsdl == null) {
-                // attempt to find it on the impl class.
-                EndpointFactory.verifyImplementorClass(implType, null);
-                String wsdlLocation = EndpointFactory.getWsdlLocation(implType);
-                if (wsdlLocation != null) {
-                    primaryWsdl = convertStringToSource(wsdlLocation);
-                }
+        Collection<? extends SDDocumentSource> metadata = this.metadata;
+        if (metadataCache != null) {
+            if (primaryWsdl != null) {
+                primaryWsdl = metadataCache.getDocument(primaryWsdl);
+            }
+            if (metadata != null) {
+                metadata = metadataCache.getDocuments(metadata);
             }
+        }
 
-            // resolver defaulting.
-            EntityResolver resolver = this.resolver;
-            if (resolver == null) {
-                if (servletContext != null) {
-                    resolver = XmlUtil.createEntityResolver(servletContext.getResource("/WEB-INF/jax-ws-catalog.xml"));
-                } else {
-                    resolver = XmlUtil.createEntityResolver(getClass().getClassLoader().getResource("/META-INF/jax-ws-catalog.xml"));
-                }
+        // resolver defaulting.
+        EntityResolver resolver = this.resolver;
+        if (resolver == null) {
+            if (servletContext != null) {
+                resolver = XmlUtil.createEntityResolver(servletContext.getResource("/WEB-INF/jax-ws-catalog.xml"));
+            } else {
+                resolver = XmlUtil.createEntityResolver(getClass().getClassLoader().getResource("/META-INF/jax-ws-catalog.xml"));
             }
+        }
+        profile(profiler, StartupPhase.WSDL_RESOLUTION, start);
 
-            endpoint = WSEndpoint.create(implType, false, invoker, serviceName,
-                    portName, new ContainerWrapper(), binding, primaryWsdl, metadata, resolver, true);
+        // the configured invoker is shared by all endpoints of this service
+        Invoker invoker = createInvoker();
+        EndpointInvoker endpointInvoker = this.invoker != null ? new EndpointInvoker(invoker, invokerStarted) : null;
+        ContainerWrapper container = new ContainerWrapper(profiler);
+        container.createStart = System.nanoTime();
+        WSEndpoint<?> endpoint = WSEndpoint.create(implType, false,
+                endpointInvoker != null ? endpointInvoker : invoker, serviceName,
+                portName, container, binding, primaryWsdl, metadata, resolver, true);
+        this.endpointInvoker = endpointInvoker;
+        if (profiler != null) {
+            long elapsed = System.nanoTime() - container.createStart;
+            profiler.record(getProfileName(), StartupPhase.ENDPOINT_INITIALIZATION,
+                    elapsed - Math.max(container.modelBuildingTime, 0) - container.tubelineAssemblyTime);
+            profiler.registerEndpoint(getProfileName(), endpoint);
         }
         return endpoint;
     }
 
+    private boolean isCaching() {
+        return cacheableOperations != null && !cacheableOperations.isEmpty();
+    }
+
+    private boolean isCoalescing() {
+        return coalescedOperations != null && !coalescedOperations.isEmpty();
+    }
+
+    /**
+     * Records the time elapsed since <code>start</code> in the given phase,
+     * unless <code>profiler</code> is {@code null}, and returns the current time.
+     */
+    private long profile(StartupProfiler profiler, StartupPhase phase, long start) {
+        long now = System.nanoTime();
+        if (profiler != null) {
+            profiler.record(getProfileName(), phase, now - start);
+        }
+        return now;
+    }
+
+    /**
+     * Returns the name the startup phases of this endpoint are recorded under.
+     */
+    private String getProfileName() {
+        if (beanName != null) {
+            return beanName;
+        }
+        if (portName != null) {
+            return portName.getLocalPart();
+        }
+        return implType.getName();
+    }
+
+    /**
+     * Returns the configured features, plus the ones needed by the other
+     * properties of this endpoint.
+     */
+    private List<WebServiceFeature> createFeatures() {
+        List<WebServiceFeature> features = new ArrayList<>();
+        if (this.features != null) {
+            features.addAll(this.features);
+        }
+        if (metadataCache != null && !hasFeature(features, UsesJAXBContextFeature.class)) {
+            features.add(metadataCache.getJAXBContextFeature());
+        }
+        if (fastInfoset != null && !hasFeature(features, FastInfosetFeature.class)) {
+            features.add(new FastInfosetFeature(fastInfoset));
+        }
+        if (attachmentMemoryThreshold >= 0 && !hasFeature(features, StreamingAttachmentFeature.class)) {
+            features.add(new StreamingAttachmentFeature(attachmentDirectory, false, attachmentMemoryThreshold));
+        }
+        return features;
+    }
+
+    private static boolean hasFeature(List<WebServiceFeature> features, Class<? extends WebServiceFeature> type) {
+        for (WebServiceFeature feature : features) {
+            if (type.isInstance(feature)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Wraps the configured {@link Invoker} in a {@link BulkheadInvoker}
+     * if a concurrency limit is configured.
+     */
+    private Invoker createInvoker() {
+        if (maxConcurrency <= 0) {
+            return invoker;
+        }
+
+        Invoker invoker = this.invoker;
+        if (invoker == null) {
+            invoker = InstanceResolver.createDefault(implType).createInvoker();
+        }
+        return new BulkheadInvoker(invoker, maxConcurrency, acquireTimeout);
+    }
+
     /**
      * Called automatically by Spring after all properties have been set, including
      * {@link #servletContext}.  This implementation creates
@@ -380,6 +963,7 @@ public class SpringService implements FactoryBean<WSEndpoint>, ServletContextAwa
      * @see #resolveSDDocumentSource(Object)
      */
     public void afterPropertiesSet() throws Exception {
+        long start = System.nanoTime();
         if (this.primaryWSDLResource != null) {
             this.primaryWsdl = this.resolveSDDocumentSource(this.primaryWSDLResource);
         }
@@ -393,6 +977,19 @@ public class SpringService implements FactoryBean<WSEndpoint>, ServletContextAwa
 
             this.metadata = tempList;
         }
+
+        // configure handlers. doing this here ensures
+        // that we are not doing this more than once.
+        if (handlers != null && binding != null) {
+            addHandlers(binding);
+        }
+        profile(startupProfiler, StartupPhase.WSDL_RESOLUTION, start);
+    }
+
+    private void addHandlers(WSBinding binding) {
+        List<Handler> chain = binding.getHandlerChain();
+        chain.addAll(handlers);
+        binding.setHandlerChain(chain);
     }
 
     /**
@@ -484,11 +1081,111 @@ public class SpringService implements FactoryBean<WSEndpoint>, ServletContextAwa
         return WSEndpoint.class;
     }
 
+    /**
+     * Invoker of one endpoint, delegating to the invoker shared by all the
+     * endpoints of this service. Only the first endpoint starts the shared
+     * invoker, and once an endpoint has been replaced by {@link #reload()},
+     * disposing it leaves the shared invoker running.
+     */
+    private static final class EndpointInvoker extends Invoker {
+
+        private final Invoker delegate;
+
+        private final AtomicBoolean started;
+
+        volatile boolean replaced;
+
+        EndpointInvoker(Invoker delegate, AtomicBoolean started) {
+            this.delegate = delegate;
+            this.started = started;
+        }
+
+        @Override
+        public void start(@NotNull WSWebServiceContext wsc, @NotNull WSEndpoint endpoint) {
+            // starting it again would inject and initialize the live bean again
+            if (started.compareAndSet(false, true)) {
+                delegate.start(wsc, endpoint);
+            }
+        }
+
+        @Override
+        public void dispose() {
+            if (!replaced) {
+                delegate.dispose();
+            }
+        }
+
+        @Override
+        public Object invoke(@NotNull Packet p, @NotNull Method m, @NotNull Object... args)
+                throws InvocationTargetException, IllegalAccessException {
+            return delegate.invoke(p, m, args);
+        }
+
+        @Override
+        public <T> T invokeProvider(@NotNull Packet p, T arg)
+                throws IllegalAccessException, InvocationTargetException {
+            return delegate.invokeProvider(p, arg);
+        }
+
+        @Override
+        public <T> void invokeAsyncProvider(@NotNull Packet p, T arg, @NotNull AsyncProviderCallback cbak,
+                                            @NotNull WebServiceContext ctxt)
+                throws IllegalAccessException, InvocationTargetException {
+            delegate.invokeAsyncProvider(p, arg, cbak, ctxt);
+        }
+    }
+
     private class ContainerWrapper extends Container {
 
+        /**
+         * Profiler recording the creation of the endpoint, or {@code null}.
+         */
+        private final StartupProfiler profiler;
+
+        /**
+         * Time at which the endpoint creation started, and the time spent in
+         * the phases recorded here, in nanoseconds.
+         */
+        long createStart;
+        long modelBuildingTime = -1;
+        long tubelineAssemblyTime;
+
+        ContainerWrapper(StartupProfiler profiler) {
+            this.profiler = profiler;
+        }
+
         public <T> T getSPI(Class<T> spiType) {
             // allow specified TubelineAssembler to be used
             if (spiType == TubelineAssemblerFactory.class) {
+                if (profiler != null && modelBuildingTime < 0) {
+                    // the tubeline is assembled once the WSDL and SEI models are built
+                    modelBuildingTime = System.nanoTime() - createStart;
+                    profiler.record(getProfileName(), StartupPhase.MODEL_BUILDING, modelBuildingTime);
+                }
+                if (metricsRegistry != null || profiler != null || isCaching() || isCoalescing()) {
+                    return spiType.cast(new TubelineAssemblerFactory() {
+                        public TubelineAssembler doCreate(BindingID bindingId) {
+                            TubelineAssembler assembler = createAssembler(bindingId);
+                            if (isCoalescing()) {
+                                // applied first, so that its tube comes after the cache tube
+                                assembler = new CoalescingTubelineAssembler(assembler, coalescedOperations,
+                                        coalescingTimeout);
+                            }
+                            if (isCaching()) {
+                                assembler = new ResponseCacheTubelineAssembler(assembler,
+                                        responseCache != null ? responseCache : new ResponseCache(),
+                                        cacheableOperations);
+                            }
+                            if (metricsRegistry != null) {
+                                assembler = new MetricsTubelineAssembler(assembler, metricsRegistry);
+                            }
+                            if (profiler != null) {
+                                assembler = new ProfilingTubelineAssembler(assembler);
+                            }
+                            return assembler;
+                        }
+                    });
+                }
                 if (assembler instanceof TubelineAssemblerFactory) {
                     return spiType.cast(assembler);
                 }
@@ -521,6 +1218,50 @@ public class SpringService implements FactoryBean<WSEndpoint>, ServletContextAwa
             return null;
         }
 
+        /**
+         * Creates the {@link TubelineAssembler} that would be used if no
+         * metrics were recorded.
+         */
+        private TubelineAssembler createAssembler(BindingID bindingId) {
+            if (assembler instanceof TubelineAssembler) {
+                return (TubelineAssembler) assembler;
+            }
+            if (assembler instanceof TubelineAssemblerFactory) {
+                TubelineAssembler created = ((TubelineAssemblerFactory) assembler).doCreate(bindingId);
+                if (created != null) {
+                    return created;
+                }
+            }
+            return TubelineAssemblerFactory.create(implType.getClassLoader(), bindingId, container);
+        }
+
+        /**
+         * Records the time spent assembling the server tubeline.
+         */
+        private class ProfilingTubelineAssembler implements TubelineAssembler {
+
+            private final TubelineAssembler assembler;
+
+            ProfilingTubelineAssembler(TubelineAssembler assembler) {
+                this.assembler = assembler;
+            }
+
+            public @NotNull Tube createClient(@NotNull ClientTubeAssemblerContext context) {
+                return assembler.createClient(context);
+            }
+
+            public @NotNull Tube createServer(@NotNull ServerTubeAssemblerContext context) {
+                long start = System.nanoTime();
+                try {
+                    return assembler.createServer(context);
+                } finally {
+                    long elapsed = System.nanoTime() - start;
+                    tubelineAssemblyTime += elapsed;
+                    profiler.record(getProfileName(), StartupPhase.TUBELINE_ASSEMBLY, elapsed);
+                }
+            }
+        }
+
         private final Module module = new Module() {
             private final List<BoundEndpoint> endpoints = new ArrayList<>();
 
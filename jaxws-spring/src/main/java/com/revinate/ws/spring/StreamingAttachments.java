@@ -0,0 +1,70 @@
+package com.revinate.ws.spring;
+
+import org.jvnet.staxex.StreamingDataHandler;
+
+import javax.activation.DataHandler;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Helps endpoint beans store and read large attachments received with
+ * {@link SpringService#setAttachmentMemoryThreshold(long)} without loading
+ * them on the heap.
+ *
+ * <p>
+ * With streaming enabled, attachments are received as
+ * {@link StreamingDataHandler}s, whose content beyond the memory threshold
+ * is spooled to a temporary file. {@link #moveTo(DataHandler, File)} then
+ * renames that file instead of copying it.
+ */
+public final class StreamingAttachments {
+
+    private StreamingAttachments() {}
+
+    /**
+     * Stores the content of an attachment in the given file. A spooled
+     * attachment is moved there; others are copied through a
+     * {@link FileChannel}. The attachment cannot be read afterwards.
+     */
+    public static void moveTo(DataHandler handler, File file) throws IOException {
+        if (handler instanceof StreamingDataHandler) {
+            StreamingDataHandler streaming = (StreamingDataHandler) handler;
+            try {
+                streaming.moveTo(file);
+            } finally {
+                streaming.close();
+            }
+            return;
+        }
+
+        try (InputStream in = handler.getInputStream();
+             ReadableByteChannel source = Channels.newChannel(in);
+             FileChannel target = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                     StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            long position = 0;
+            long transferred;
+            while ((transferred = target.transferFrom(source, position, 1 << 20)) > 0) {
+                position += transferred;
+            }
+        }
+    }
+
+    /**
+     * Stores the content of an attachment in the given file, as with
+     * {@link #moveTo(DataHandler, File)}, and maps the file in memory,
+     * read-only. The mapping stays valid until it is garbage collected.
+     * Only files up to 2 GB can be mapped.
+     */
+    public static MappedByteBuffer map(DataHandler handler, File file) throws IOException {
+        moveTo(handler, file);
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+}
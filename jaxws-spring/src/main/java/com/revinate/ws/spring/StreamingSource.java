@@ -0,0 +1,128 @@
+package com.revinate.ws.spring;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import javax.xml.transform.stream.StreamSource;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * {@link StreamSource} whose content is written with StAX as it is read,
+ * for {@link javax.xml.ws.Provider Provider&lt;Source&gt;} endpoint beans
+ * returning large responses.
+ *
+ * <p>
+ * JAX-WS reads a {@link StreamSource} payload while writing the response,
+ * so the payload is generated part by part as the response is sent, and
+ * never held in memory as a whole. {@link #writeNext(XMLStreamWriter)} is
+ * called whenever the data written so far has been consumed; writing, say,
+ * one record per call keeps memory use bounded by the size of a record.
+ * The generation is paced by the client: it stops while the servlet output
+ * stream blocks. The response has no content length, so the container
+ * sends it with chunked transfer encoding; only responses to HTTP/1.0
+ * requests are buffered by JAX-WS to compute their length.
+ *
+ * <p>
+ * For the response to be streamed, the operation must not be cacheable or
+ * coalesced, and no handler may read the response message, as these keep
+ * a copy of it. An error thrown by {@link #writeNext(XMLStreamWriter)} after
+ * the response is committed aborts it.
+ */
+public abstract class StreamingSource extends StreamSource {
+
+    private static final XMLOutputFactory outputFactory = XMLOutputFactory.newInstance();
+
+    protected StreamingSource() {
+        setInputStream(new PayloadInputStream());
+    }
+
+    /**
+     * Writes the next part of the payload, and returns whether there is more
+     * to write. The first call writes the start of the payload element;
+     * elements left open by the last call are closed automatically.
+     */
+    protected abstract boolean writeNext(XMLStreamWriter writer) throws XMLStreamException;
+
+    private class PayloadInputStream extends InputStream {
+
+        private final Buffer buffer = new Buffer();
+
+        private XMLStreamWriter writer;
+
+        /**
+         * Position of the next byte to read in {@link #buffer}.
+         */
+        private int position;
+
+        private boolean finished;
+
+        @Override
+        public int read() throws IOException {
+            if (!fill()) {
+                return -1;
+            }
+            return buffer.array()[position++] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!fill()) {
+                return -1;
+            }
+            int read = Math.min(len, buffer.size() - position);
+            System.arraycopy(buffer.array(), position, b, off, read);
+            position += read;
+            return read;
+        }
+
+        @Override
+        public int available() {
+            return buffer.size() - position;
+        }
+
+        /**
+         * Writes the next parts of the payload until there is something to
+         * read, and returns whether there is.
+         */
+        private boolean fill() throws IOException {
+            while (position == buffer.size()) {
+                if (finished) {
+                    return false;
+                }
+                buffer.reset();
+                position = 0;
+                try {
+                    if (writer == null) {
+                        writer = outputFactory.createXMLStreamWriter(buffer, "UTF-8");
+                    }
+                    if (writeNext(writer)) {
+                        writer.flush();
+                    } else {
+                        writer.writeEndDocument();
+                        writer.flush();
+                        writer.close();
+                        finished = true;
+                    }
+                } catch (XMLStreamException e) {
+                    throw new IOException(e);
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * {@link ByteArrayOutputStream} whose content can be read in place.
+     */
+    private static final class Buffer extends ByteArrayOutputStream {
+
+        byte[] array() {
+            return buf;
+        }
+    }
+}
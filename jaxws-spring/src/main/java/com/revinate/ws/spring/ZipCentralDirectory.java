@@ -0,0 +1,226 @@
+package com.revinate.ws.spring;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Read-only view of the central directory of a zip file held in a
+ * {@link ByteBuffer}, usually memory-mapped.
+ *
+ * <p>
+ * Entries are looked up by reading the central directory only, so unrelated
+ * entries are never inflated. Stored entries, such as the nested jars of a
+ * Spring Boot executable jar, are returned as slices of the buffer without
+ * copying. Zip64 archives are not supported.
+ */
+final class ZipCentralDirectory {
+
+    private static final int END_SIGNATURE = 0x06054b50;
+    private static final int END_LENGTH = 22;
+    private static final int MAX_COMMENT_LENGTH = 0xffff;
+
+    private static final int CENTRAL_SIGNATURE = 0x02014b50;
+    private static final int CENTRAL_LENGTH = 46;
+
+    private static final int LOCAL_SIGNATURE = 0x04034b50;
+    private static final int LOCAL_LENGTH = 30;
+
+    private static final int STORED = 0;
+    private static final int DEFLATED = 8;
+
+    private final ByteBuffer buffer;
+
+    private final int centralOffset;
+
+    private final int entryCount;
+
+    ZipCentralDirectory(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        int end = findEnd(this.buffer);
+        this.entryCount = this.buffer.getShort(end + 10) & 0xffff;
+        long offset = this.buffer.getInt(end + 16) & 0xffffffffL;
+        if (entryCount == 0xffff || offset == 0xffffffffL) {
+            throw new ZipException("Zip64 archives are not supported");
+        }
+        this.centralOffset = (int) offset;
+    }
+
+    /**
+     * Maps the whole file read-only and reads its central directory.
+     */
+    static ZipCentralDirectory map(FileChannel channel) throws IOException {
+        long size = channel.size();
+        if (size > Integer.MAX_VALUE) {
+            throw new ZipException("Zip file too large to map");
+        }
+        return new ZipCentralDirectory(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+    }
+
+    /**
+     * Returns the names of the file entries starting with the given prefix.
+     */
+    List<String> getNames(String prefix) throws IOException {
+        byte[] prefixBytes = prefix.getBytes(StandardCharsets.UTF_8);
+        List<String> names = new ArrayList<>();
+        int position = centralOffset;
+        for (int i = 0; i < entryCount; i++) {
+            int nameLength = checkCentralHeader(position);
+            int nameOffset = position + CENTRAL_LENGTH;
+            if (nameLength > 0 && buffer.get(nameOffset + nameLength - 1) != '/'
+                    && startsWith(nameOffset, nameLength, prefixBytes)) {
+                names.add(readName(nameOffset, nameLength));
+            }
+            position = nextEntry(position);
+        }
+        return names;
+    }
+
+    /**
+     * Returns the content of the file entry with the given name, or
+     * {@code null} if there is no such entry. Stored entries are returned as
+     * a slice of the underlying buffer; deflated entries are inflated.
+     */
+    ByteBuffer getContent(String name) throws IOException {
+        int position = findEntry(name);
+        if (position < 0) {
+            return null;
+        }
+
+        int method = buffer.getShort(position + 10) & 0xffff;
+        int compressedSize = buffer.getInt(position + 20);
+        int uncompressedSize = buffer.getInt(position + 24);
+        int localOffset = buffer.getInt(position + 42);
+        if (compressedSize < 0 || uncompressedSize < 0 || localOffset < 0) {
+            throw new ZipException("Zip64 entries are not supported");
+        }
+
+        checkSignature(localOffset, LOCAL_SIGNATURE, LOCAL_LENGTH);
+        int dataOffset = localOffset + LOCAL_LENGTH
+                + (buffer.getShort(localOffset + 26) & 0xffff)
+                + (buffer.getShort(localOffset + 28) & 0xffff);
+        ByteBuffer data = slice(dataOffset, compressedSize);
+
+        if (method == STORED) {
+            return data;
+        } else if (method == DEFLATED) {
+            return inflate(data, uncompressedSize);
+        } else {
+            throw new ZipException("Unsupported compression method " + method + " for entry " + name);
+        }
+    }
+
+    private int findEntry(String name) throws IOException {
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        int position = centralOffset;
+        for (int i = 0; i < entryCount; i++) {
+            int nameLength = checkCentralHeader(position);
+            if (nameLength == nameBytes.length && startsWith(position + CENTRAL_LENGTH, nameLength, nameBytes)) {
+                return position;
+            }
+            position = nextEntry(position);
+        }
+        return -1;
+    }
+
+    private int nextEntry(int position) {
+        return position + CENTRAL_LENGTH
+                + (buffer.getShort(position + 28) & 0xffff)
+                + (buffer.getShort(position + 30) & 0xffff)
+                + (buffer.getShort(position + 32) & 0xffff);
+    }
+
+    private boolean startsWith(int offset, int length, byte[] prefix) {
+        if (length < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (buffer.get(offset + i) != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String readName(int offset, int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = buffer.get(offset + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private ByteBuffer slice(int offset, int length) throws ZipException {
+        if (offset < 0 || length < 0 || offset + length > buffer.limit()) {
+            throw new ZipException("Invalid entry offset");
+        }
+        ByteBuffer slice = buffer.duplicate();
+        slice.position(offset);
+        slice.limit(offset + length);
+        return slice.slice();
+    }
+
+    /**
+     * Checks that a complete central directory header, including its name,
+     * starts at the given position.
+     *
+     * @return the length of the entry name
+     */
+    private int checkCentralHeader(int position) throws ZipException {
+        checkSignature(position, CENTRAL_SIGNATURE, CENTRAL_LENGTH);
+        int nameLength = buffer.getShort(position + 28) & 0xffff;
+        if ((long) position + CENTRAL_LENGTH + nameLength > buffer.limit()) {
+            throw new ZipException("Invalid zip file structure");
+        }
+        return nameLength;
+    }
+
+    private void checkSignature(int position, int signature, int headerLength) throws ZipException {
+        if (position < 0 || (long) position + headerLength > buffer.limit() || buffer.getInt(position) != signature) {
+            throw new ZipException("Invalid zip file structure");
+        }
+    }
+
+    private static int findEnd(ByteBuffer buffer) throws ZipException {
+        int lowest = Math.max(0, buffer.limit() - END_LENGTH - MAX_COMMENT_LENGTH);
+        for (int position = buffer.limit() - END_LENGTH; position >= lowest; position--) {
+            if (buffer.getInt(position) == END_SIGNATURE) {
+                return position;
+            }
+        }
+        throw new ZipException("End of central directory not found");
+    }
+
+    private static ByteBuffer inflate(ByteBuffer data, int uncompressedSize) throws ZipException {
+        byte[] input = new byte[data.remaining()];
+        data.get(input);
+        byte[] output = new byte[uncompressedSize];
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(input);
+            int length = 0;
+            while (length < output.length && !inflater.finished()) {
+                int inflated = inflater.inflate(output, length, output.length - length);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                length += inflated;
+            }
+            if (length != output.length) {
+                throw new ZipException("Truncated deflated entry");
+            }
+            return ByteBuffer.wrap(output);
+        } catch (DataFormatException e) {
+            throw new ZipException(e.getMessage());
+        } finally {
+            inflater.end();
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package com.revinate.ws.spring.cache;
+
+import com.sun.xml.ws.api.WSBinding;
+import com.sun.xml.ws.api.message.Message;
+import com.sun.xml.ws.api.message.Packet;
+import com.sun.xml.ws.api.model.SEIModel;
+import com.sun.xml.ws.api.model.wsdl.WSDLPort;
+import com.sun.xml.ws.api.pipe.NextAction;
+import com.sun.xml.ws.api.pipe.Tube;
+import com.sun.xml.ws.api.pipe.TubeCloner;
+import com.sun.xml.ws.api.pipe.helper.AbstractFilterTubeImpl;
+import com.sun.xml.ws.api.pipe.helper.AbstractTubeImpl;
+
+import javax.xml.namespace.QName;
+import javax.xml.ws.WebServiceException;
+import java.io.ByteArrayInputStream;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tube that lets concurrent identical requests to coalesced operations share
+ * a single invocation of the endpoint. It is placed right before the
+ * terminal tube, like the {@link ResponseCacheTube}.
+ *
+ * <p>
+ * The first request with a given payload is processed as usual; the ones
+ * arriving while it is in flight wait for it, on their own thread, and are
+ * answered with a copy of its response, faults included, or fail with an
+ * exception caused by the same one. If the response cannot be replayed from
+ * its payload, or does not come within the timeout, the waiting requests are
+ * processed on their own.
+ */
+class CoalescingTube extends AbstractFilterTubeImpl {
+
+    /**
+     * Requests in flight, shared by all copies of the tube.
+     */
+    private final ConcurrentMap<RequestKey, Call> calls;
+
+    private final Set<QName> operations;
+
+    /**
+     * Maximum time in milliseconds to wait for the request in flight.
+     */
+    private final long timeout;
+
+    private final QName portName;
+
+    private final WSDLPort wsdlPort;
+
+    private final SEIModel seiModel;
+
+    private final WSBinding binding;
+
+    private RequestKey key;
+
+    private Call call;
+
+    CoalescingTube(Tube next, ConcurrentMap<RequestKey, Call> calls, Set<QName> operations, long timeout,
+                   QName portName, WSDLPort wsdlPort, SEIModel seiModel, WSBinding binding) {
+        super(next);
+        this.calls = calls;
+        this.operations = operations;
+        this.timeout = timeout;
+        this.portName = portName;
+        this.wsdlPort = wsdlPort;
+        this.seiModel = seiModel;
+        this.binding = binding;
+    }
+
+    private CoalescingTube(CoalescingTube that, TubeCloner cloner) {
+        super(that, cloner);
+        this.calls = that.calls;
+        this.operations = that.operations;
+        this.timeout = that.timeout;
+        this.portName = that.portName;
+        this.wsdlPort = that.wsdlPort;
+        this.seiModel = that.seiModel;
+        this.binding = that.binding;
+    }
+
+    @Override
+    public AbstractTubeImpl copy(TubeCloner cloner) {
+        return new CoalescingTube(this, cloner);
+    }
+
+    @Override
+    public NextAction processRequest(Packet request) {
+        key = null;
+        call = null;
+        QName operation = request.getWSDLOperation();
+        Message message = request.getMessage();
+        if (operation == null || message == null || !operations.contains(operation)
+                || !Payloads.isComparable(message)) {
+            return super.processRequest(request);
+        }
+
+        // the request is read from a copy, so that it can still be processed
+        RequestKey key = new RequestKey(portName, operation, Payloads.write(message.copy()));
+        Call call = new Call();
+        Call inFlight = calls.putIfAbsent(key, call);
+        if (inFlight == null) {
+            this.key = key;
+            this.call = call;
+            return super.processRequest(request);
+        }
+
+        try {
+            if (!inFlight.await(timeout)) {
+                return super.processRequest(request);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return doThrow(new WebServiceException(e));
+        }
+        if (inFlight.failure != null) {
+            // each waiting fiber gets its own exception
+            return doThrow(new WebServiceException(inFlight.failure.getMessage(), inFlight.failure));
+        }
+        if (inFlight.response == null) {
+            return super.processRequest(request);
+        }
+        Message response = Payloads.read(new ByteArrayInputStream(inFlight.response), binding.getSOAPVersion());
+        return doReturnWith(request.createServerResponse(response, wsdlPort, seiModel, binding));
+    }
+
+    @Override
+    public NextAction processResponse(Packet response) {
+        if (call != null) {
+            Message message = response.getMessage();
+            complete(message != null && Payloads.isReplayable(message, binding, true)
+                    ? Payloads.write(message.copy()) : null, null);
+        }
+        return super.processResponse(response);
+    }
+
+    @Override
+    public NextAction processException(Throwable t) {
+        if (call != null) {
+            complete(null, t);
+        }
+        return super.processException(t);
+    }
+
+    private void complete(byte[] response, Throwable failure) {
+        // later requests start a new call
+        calls.remove(key, call);
+        call.response = response;
+        call.failure = failure;
+        call.done.countDown();
+        key = null;
+        call = null;
+    }
+
+    /**
+     * Outcome of a request in flight, published to the waiting requests by
+     * the latch.
+     */
+    static final class Call {
+
+        private final CountDownLatch done = new CountDownLatch(1);
+
+        /**
+         * Serialized response payload, or {@code null} if it cannot be replayed.
+         */
+        private byte[] response;
+
+        private Throwable failure;
+
+        /**
+         * Waits up to the given time in milliseconds for the outcome, and
+         * returns whether it is known.
+         */
+        boolean await(long timeout) throws InterruptedException {
+            return done.await(timeout, TimeUnit.MILLISECONDS);
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.revinate.ws.spring.cache;
+
+import com.sun.xml.ws.api.pipe.ClientTubeAssemblerContext;
+import com.sun.xml.ws.api.pipe.ServerTubeAssemblerContext;
+import com.sun.xml.ws.api.pipe.Tube;
+import com.sun.xml.ws.api.pipe.TubelineAssembler;
+import com.sun.xml.ws.api.server.WSEndpoint;
+
+import javax.xml.namespace.QName;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * {@link TubelineAssembler} that puts a tube coalescing concurrent identical
+ * requests right before the terminal tube of the server tubeline created by
+ * another assembler.
+ *
+ * @see com.revinate.ws.spring.SpringService#setCoalescedOperations(java.util.Collection)
+ */
+public class CoalescingTubelineAssembler implements TubelineAssembler {
+
+    private final TubelineAssembler delegate;
+
+    private final Set<QName> operations;
+
+    private final long timeout;
+
+    /**
+     * @param operations the names of the coalesced operations, as defined
+     * in the WSDL
+     * @param timeout the maximum time in milliseconds a request waits for
+     * the identical request in flight
+     */
+    public CoalescingTubelineAssembler(TubelineAssembler delegate, Set<QName> operations, long timeout) {
+        this.delegate = delegate;
+        this.operations = operations;
+        this.timeout = timeout;
+    }
+
+    public Tube createClient(ClientTubeAssemblerContext context) {
+        return delegate.createClient(context);
+    }
+
+    public Tube createServer(ServerTubeAssemblerContext context) {
+        WSEndpoint<?> endpoint = context.getEndpoint();
+        Tube terminal = new CoalescingTube(context.getTerminalTube(),
+                new ConcurrentHashMap<RequestKey, CoalescingTube.Call>(), operations, timeout,
+                endpoint.getPortName(), context.getWsdlModel(), context.getSEIModel(), endpoint.getBinding());
+        return delegate.createServer(new TerminalContext(context, terminal));
+    }
+}
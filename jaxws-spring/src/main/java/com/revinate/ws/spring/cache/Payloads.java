@@ -0,0 +1,90 @@
+package com.revinate.ws.spring.cache;
+
+import com.sun.xml.ws.api.SOAPVersion;
+import com.sun.xml.ws.api.WSBinding;
+import com.sun.xml.ws.api.addressing.AddressingVersion;
+import com.sun.xml.ws.api.message.Header;
+import com.sun.xml.ws.api.message.Message;
+import com.sun.xml.ws.api.message.Messages;
+import com.sun.xml.ws.api.streaming.XMLStreamReaderFactory;
+import com.sun.xml.ws.api.streaming.XMLStreamWriterFactory;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+import javax.xml.ws.WebServiceException;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.Iterator;
+
+/**
+ * Serializes message payloads, so that requests can be compared and
+ * responses replayed.
+ */
+final class Payloads {
+
+    private Payloads() {}
+
+    /**
+     * Returns whether a request can be identified by its payload alone.
+     */
+    static boolean isComparable(Message request) {
+        return request.getAttachments().isEmpty();
+    }
+
+    /**
+     * Returns whether a response can be replayed from its payload: it has a
+     * payload, no attachments, and no headers other than WS-Addressing ones,
+     * which are recreated for each response. Faults are only replayable if
+     * <code>faults</code> is <code>true</code>.
+     */
+    static boolean isReplayable(Message response, WSBinding binding, boolean faults) {
+        if ((response.isFault() && !faults) || !response.hasPayload() || !response.getAttachments().isEmpty()) {
+            return false;
+        }
+        if (response.hasHeaders()) {
+            AddressingVersion addressingVersion = binding.getAddressingVersion();
+            Iterator<Header> headers = response.getHeaders().getHeaders();
+            while (headers.hasNext()) {
+                Header header = headers.next();
+                if (addressingVersion == null || !addressingVersion.nsUri.equals(header.getNamespaceURI())) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Serializes the payload of a message, which is consumed. Writing it
+     * through the StAX writer puts equivalent payloads in the same form,
+     * regardless of formatting details such as attribute quotes, empty
+     * elements or character references.
+     */
+    static byte[] write(Message message) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+        XMLStreamWriter writer = XMLStreamWriterFactory.create(out);
+        try {
+            message.writePayloadTo(writer);
+            writer.flush();
+        } catch (XMLStreamException e) {
+            throw new WebServiceException(e);
+        } finally {
+            XMLStreamWriterFactory.recycle(writer);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Creates a message with a payload serialized by {@link #write(Message)}.
+     */
+    static Message read(InputStream payload, SOAPVersion soapVersion) {
+        XMLStreamReader reader = XMLStreamReaderFactory.create(null, payload, true);
+        try {
+            reader.nextTag();
+        } catch (XMLStreamException e) {
+            throw new WebServiceException(e);
+        }
+        return Messages.createUsingPayload(reader, soapVersion);
+    }
+}
@@ -0,0 +1,48 @@
+package com.revinate.ws.spring.cache;
+
+import javax.xml.namespace.QName;
+import java.util.Arrays;
+
+/**
+ * Identifies a request: the port and operation it is sent to, and its
+ * payload, serialized by {@link Payloads#write}.
+ */
+final class RequestKey {
+
+    private final QName port;
+
+    private final QName operation;
+
+    private final byte[] payload;
+
+    private final int hash;
+
+    RequestKey(QName port, QName operation, byte[] payload) {
+        this.port = port;
+        this.operation = operation;
+        this.payload = payload;
+        this.hash = (port.hashCode() * 31 + operation.hashCode()) * 31 + Arrays.hashCode(payload);
+    }
+
+    int getPayloadLength() {
+        return payload.length;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof RequestKey)) {
+            return false;
+        }
+        RequestKey other = (RequestKey) obj;
+        return hash == other.hash && port.equals(other.port) && operation.equals(other.operation)
+                && Arrays.equals(payload, other.payload);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+}
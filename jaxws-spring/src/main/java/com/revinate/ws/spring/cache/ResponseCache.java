@@ -0,0 +1,231 @@
+package com.revinate.ws.spring.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of the responses of operations whose result only depends on the
+ * request payload, keyed by port, operation and request payload.
+ *
+ * <p>
+ * Payloads are kept in serialized form, so a cache hit neither unmarshals
+ * the request nor marshals the response again, and can optionally be kept
+ * off-heap in direct buffers. Entries expire after the time to live, and the
+ * least recently used entries are evicted beyond the maximum number of
+ * entries or bytes. A cache can be shared by several endpoints.
+ *
+ * @see com.revinate.ws.spring.SpringService#setCacheableOperations(java.util.Collection)
+ */
+public class ResponseCache {
+
+    private int maxSize = 1000;
+
+    private long maxBytes;
+
+    private long timeToLive = TimeUnit.MINUTES.toMillis(5);
+
+    private boolean offHeap;
+
+    private final Map<RequestKey, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * Total size of the keys and responses in {@link #entries}, guarded by it.
+     */
+    private long bytes;
+
+    private final AtomicLong hitCount = new AtomicLong();
+
+    private final AtomicLong missCount = new AtomicLong();
+
+    /**
+     * Sets the maximum number of cached responses. Defaults to 1000.
+     */
+    public void setMaxSize(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Sets the maximum total size in bytes of the cached request and response
+     * payloads. Defaults to <code>0</code>, which means no limit.
+     */
+    public void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Sets how long a response is served from the cache, in milliseconds.
+     * Defaults to 5 minutes; <code>0</code> or less means forever.
+     */
+    public void setTimeToLive(long timeToLive) {
+        this.timeToLive = timeToLive;
+    }
+
+    /**
+     * Sets whether responses are kept in direct buffers, outside of the
+     * Java heap, so that a large cache does not add to garbage collection
+     * pauses. Defaults to {@code false}.
+     */
+    public void setOffHeap(boolean offHeap) {
+        this.offHeap = offHeap;
+    }
+
+    /**
+     * Returns the response cached for a request, or {@code null} if there
+     * is none or it has expired.
+     */
+    InputStream get(RequestKey key) {
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+            if (entry != null && entry.isExpired(System.currentTimeMillis())) {
+                remove(key);
+                entry = null;
+            }
+        }
+        if (entry == null) {
+            missCount.incrementAndGet();
+            return null;
+        }
+        hitCount.incrementAndGet();
+        return entry.openStream();
+    }
+
+    void put(RequestKey key, byte[] response) {
+        if (maxBytes > 0 && key.getPayloadLength() + response.length > maxBytes) {
+            return;
+        }
+
+        long expires = timeToLive > 0 ? System.currentTimeMillis() + timeToLive : Long.MAX_VALUE;
+        Entry entry = new Entry(response, offHeap, expires);
+        synchronized (entries) {
+            remove(key);
+            entries.put(key, entry);
+            bytes += key.getPayloadLength() + entry.length;
+            Iterator<Map.Entry<RequestKey, Entry>> eldest = entries.entrySet().iterator();
+            while (entries.size() > maxSize || (maxBytes > 0 && bytes > maxBytes)) {
+                Map.Entry<RequestKey, Entry> evicted = eldest.next();
+                bytes -= evicted.getKey().getPayloadLength() + evicted.getValue().length;
+                eldest.remove();
+            }
+        }
+    }
+
+    private void remove(RequestKey key) {
+        Entry removed = entries.remove(key);
+        if (removed != null) {
+            bytes -= key.getPayloadLength() + removed.length;
+        }
+    }
+
+    /**
+     * Returns the number of requests answered from the cache.
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * Returns the number of requests of cacheable operations that were
+     * not in the cache.
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * Returns the number of cached responses, including expired ones not
+     * evicted yet.
+     */
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * Removes all cached responses.
+     */
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+            bytes = 0;
+        }
+    }
+
+    private static final class Entry {
+
+        /**
+         * The response payload, either a byte array or a read-only direct buffer.
+         */
+        private final byte[] heapResponse;
+
+        private final ByteBuffer directResponse;
+
+        private final int length;
+
+        private final long expires;
+
+        Entry(byte[] response, boolean offHeap, long expires) {
+            if (offHeap) {
+                ByteBuffer buffer = ByteBuffer.allocateDirect(response.length);
+                buffer.put(response).flip();
+                this.heapResponse = null;
+                this.directResponse = buffer.asReadOnlyBuffer();
+            } else {
+                this.heapResponse = response;
+                this.directResponse = null;
+            }
+            this.length = response.length;
+            this.expires = expires;
+        }
+
+        boolean isExpired(long now) {
+            return now >= expires;
+        }
+
+        InputStream openStream() {
+            if (heapResponse != null) {
+                return new ByteArrayInputStream(heapResponse);
+            }
+            return new ByteBufferInputStream(directResponse.duplicate());
+        }
+    }
+
+    private static final class ByteBufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(len, buffer.remaining());
+            buffer.get(b, off, count);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
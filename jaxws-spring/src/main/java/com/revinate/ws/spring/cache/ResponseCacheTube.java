@@ -0,0 +1,112 @@
+package com.revinate.ws.spring.cache;
+
+import com.revinate.ws.spring.EndpointWarmer;
+import com.sun.xml.ws.api.WSBinding;
+import com.sun.xml.ws.api.message.Message;
+import com.sun.xml.ws.api.message.Packet;
+import com.sun.xml.ws.api.model.SEIModel;
+import com.sun.xml.ws.api.model.wsdl.WSDLPort;
+import com.sun.xml.ws.api.pipe.NextAction;
+import com.sun.xml.ws.api.pipe.Tube;
+import com.sun.xml.ws.api.pipe.TubeCloner;
+import com.sun.xml.ws.api.pipe.helper.AbstractFilterTubeImpl;
+import com.sun.xml.ws.api.pipe.helper.AbstractTubeImpl;
+
+import javax.xml.namespace.QName;
+import java.io.InputStream;
+import java.util.Set;
+
+/**
+ * Tube that answers requests to cacheable operations from a
+ * {@link ResponseCache}. It is placed right before the terminal tube, so
+ * that handlers and other tubes still see every request and response, while
+ * cache hits skip unmarshalling the request, invoking the endpoint and
+ * marshalling the response.
+ *
+ * <p>
+ * Only responses that are not faults, have a payload and no attachments,
+ * and no headers other than WS-Addressing ones, which are recreated for
+ * each response, are cached. Warm-up requests are not answered from the
+ * cache, nor cached. The request being processed is kept in a
+ * field, since each copy of a tube only processes one request at a time.
+ */
+class ResponseCacheTube extends AbstractFilterTubeImpl {
+
+    private final ResponseCache cache;
+
+    private final Set<QName> operations;
+
+    private final QName portName;
+
+    private final WSDLPort wsdlPort;
+
+    private final SEIModel seiModel;
+
+    private final WSBinding binding;
+
+    private RequestKey key;
+
+    ResponseCacheTube(Tube next, ResponseCache cache, Set<QName> operations, QName portName,
+                      WSDLPort wsdlPort, SEIModel seiModel, WSBinding binding) {
+        super(next);
+        this.cache = cache;
+        this.operations = operations;
+        this.portName = portName;
+        this.wsdlPort = wsdlPort;
+        this.seiModel = seiModel;
+        this.binding = binding;
+    }
+
+    private ResponseCacheTube(ResponseCacheTube that, TubeCloner cloner) {
+        super(that, cloner);
+        this.cache = that.cache;
+        this.operations = that.operations;
+        this.portName = that.portName;
+        this.wsdlPort = that.wsdlPort;
+        this.seiModel = that.seiModel;
+        this.binding = that.binding;
+    }
+
+    @Override
+    public AbstractTubeImpl copy(TubeCloner cloner) {
+        return new ResponseCacheTube(this, cloner);
+    }
+
+    @Override
+    public NextAction processRequest(Packet request) {
+        key = null;
+        QName operation = request.getWSDLOperation();
+        Message message = request.getMessage();
+        if (operation == null || message == null || !operations.contains(operation)
+                || !Payloads.isComparable(message) || EndpointWarmer.isWarmUp(request)) {
+            return super.processRequest(request);
+        }
+
+        // the request is read from a copy, so that it can still be processed
+        RequestKey key = new RequestKey(portName, operation, Payloads.write(message.copy()));
+        InputStream response = cache.get(key);
+        if (response != null) {
+            Message responseMessage = Payloads.read(response, binding.getSOAPVersion());
+            return doReturnWith(request.createServerResponse(responseMessage, wsdlPort, seiModel, binding));
+        }
+        this.key = key;
+        return super.processRequest(request);
+    }
+
+    @Override
+    public NextAction processResponse(Packet response) {
+        RequestKey key = this.key;
+        this.key = null;
+        Message message = response.getMessage();
+        if (key != null && message != null && Payloads.isReplayable(message, binding, false)) {
+            cache.put(key, Payloads.write(message.copy()));
+        }
+        return super.processResponse(response);
+    }
+
+    @Override
+    public NextAction processException(Throwable t) {
+        key = null;
+        return super.processException(t);
+    }
+}
@@ -0,0 +1,47 @@
+package com.revinate.ws.spring.cache;
+
+import com.sun.xml.ws.api.pipe.ClientTubeAssemblerContext;
+import com.sun.xml.ws.api.pipe.ServerTubeAssemblerContext;
+import com.sun.xml.ws.api.pipe.Tube;
+import com.sun.xml.ws.api.pipe.TubelineAssembler;
+import com.sun.xml.ws.api.server.WSEndpoint;
+
+import javax.xml.namespace.QName;
+import java.util.Set;
+
+/**
+ * {@link TubelineAssembler} that puts a tube answering requests from a
+ * {@link ResponseCache} right before the terminal tube of the server
+ * tubeline created by another assembler.
+ *
+ * @see com.revinate.ws.spring.SpringService#setCacheableOperations(java.util.Collection)
+ */
+public class ResponseCacheTubelineAssembler implements TubelineAssembler {
+
+    private final TubelineAssembler delegate;
+
+    private final ResponseCache cache;
+
+    private final Set<QName> operations;
+
+    /**
+     * @param operations the names of the cacheable operations, as defined
+     * in the WSDL
+     */
+    public ResponseCacheTubelineAssembler(TubelineAssembler delegate, ResponseCache cache, Set<QName> operations) {
+        this.delegate = delegate;
+        this.cache = cache;
+        this.operations = operations;
+    }
+
+    public Tube createClient(ClientTubeAssemblerContext context) {
+        return delegate.createClient(context);
+    }
+
+    public Tube createServer(ServerTubeAssemblerContext context) {
+        WSEndpoint<?> endpoint = context.getEndpoint();
+        Tube terminal = new ResponseCacheTube(context.getTerminalTube(), cache, operations,
+                endpoint.getPortName(), context.getWsdlModel(), context.getSEIModel(), endpoint.getBinding());
+        return delegate.createServer(new TerminalContext(context, terminal));
+    }
+}
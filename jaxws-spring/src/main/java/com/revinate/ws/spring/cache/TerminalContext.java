@@ -0,0 +1,32 @@
+package com.revinate.ws.spring.cache;
+
+import com.sun.xml.ws.api.pipe.Codec;
+import com.sun.xml.ws.api.pipe.ServerTubeAssemblerContext;
+import com.sun.xml.ws.api.pipe.Tube;
+
+/**
+ * Context that gives an assembler another terminal tube, so that a tube can
+ * be put right before the original one. The codec chosen by the assembler is
+ * the one the endpoint reads from the original context, so it is passed
+ * through.
+ */
+class TerminalContext extends ServerTubeAssemblerContext {
+
+    private final ServerTubeAssemblerContext context;
+
+    TerminalContext(ServerTubeAssemblerContext context, Tube terminal) {
+        super(context.getSEIModel(), context.getWsdlModel(), context.getEndpoint(), terminal,
+                context.isSynchronous());
+        this.context = context;
+    }
+
+    @Override
+    public Codec getCodec() {
+        return context.getCodec();
+    }
+
+    @Override
+    public void setCodec(Codec codec) {
+        context.setCodec(codec);
+    }
+}
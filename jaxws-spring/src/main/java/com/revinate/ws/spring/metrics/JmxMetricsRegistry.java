@@ -0,0 +1,70 @@
+package com.revinate.ws.spring.metrics;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.DisposableBean;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * {@link MetricsRegistry} that registers the metrics of each operation as an
+ * MBean, named <code>&lt;domain&gt;:type=Operation,service=...,port=...,operation=...</code>.
+ * The MBeans are unregistered when the registry is destroyed.
+ */
+public class JmxMetricsRegistry extends SimpleMetricsRegistry implements DisposableBean {
+
+    private static final Log logger = LogFactory.getLog(JmxMetricsRegistry.class);
+
+    private MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+    private String domain = "com.revinate.ws";
+
+    private final List<ObjectName> registered = new CopyOnWriteArrayList<>();
+
+    /**
+     * Sets the MBean server. Defaults to the platform MBean server.
+     */
+    public void setServer(MBeanServer server) {
+        this.server = server;
+    }
+
+    /**
+     * Sets the domain of the MBean names. Defaults to <code>com.revinate.ws</code>.
+     */
+    public void setDomain(String domain) {
+        this.domain = domain;
+    }
+
+    @Override
+    protected void register(OperationMetrics operationMetrics) {
+        try {
+            Hashtable<String, String> properties = new Hashtable<>();
+            properties.put("type", "Operation");
+            properties.put("service", ObjectName.quote(operationMetrics.getServiceName()));
+            properties.put("port", ObjectName.quote(operationMetrics.getPortName()));
+            properties.put("operation", ObjectName.quote(operationMetrics.getOperationName()));
+            ObjectName name = new ObjectName(domain, properties);
+            server.registerMBean(operationMetrics, name);
+            registered.add(name);
+        } catch (JMException e) {
+            logger.warn("Failed to register metrics of " + operationMetrics.getOperationName(), e);
+        }
+    }
+
+    public void destroy() {
+        for (ObjectName name : registered) {
+            try {
+                server.unregisterMBean(name);
+            } catch (JMException e) {
+                logger.debug("Failed to unregister " + name, e);
+            }
+        }
+        registered.clear();
+    }
+}
@@ -0,0 +1,143 @@
+package com.revinate.ws.spring.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of latencies, with log-linear buckets in the style of
+ * HdrHistogram.
+ *
+ * <p>
+ * Latencies are recorded in microseconds. Each power of two is split into
+ * {@value #SUB_BUCKET_COUNT} buckets, so that values are reported with a
+ * relative error below 4%, up to about 12 days. Recording does not allocate
+ * and only uses atomic increments.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+    private static final int MAX_EXPONENT = 40;
+
+    private static final int BUCKET_COUNT = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKET_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+
+    private final AtomicLong count = new AtomicLong();
+
+    private final AtomicLong sum = new AtomicLong();
+
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records a latency.
+     *
+     * @param nanos the latency in nanoseconds
+     */
+    public void record(long nanos) {
+        long micros = Math.max(0, nanos / 1000);
+        counts.incrementAndGet(indexOf(micros));
+        count.incrementAndGet();
+        sum.addAndGet(micros);
+        long currentMax;
+        while (micros > (currentMax = max.get())) {
+            if (max.compareAndSet(currentMax, micros)) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of recorded latencies.
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * Returns the mean latency, or <code>0</code> if none was recorded.
+     */
+    public double getMean(TimeUnit unit) {
+        long count = this.count.get();
+        if (count == 0) {
+            return 0;
+        }
+        return toUnit((double) sum.get() / count, unit);
+    }
+
+    /**
+     * Returns the highest recorded latency.
+     */
+    public double getMax(TimeUnit unit) {
+        return toUnit(max.get(), unit);
+    }
+
+    /**
+     * Returns the latency below which the given percentage of the recorded
+     * latencies fall, or <code>0</code> if none was recorded.
+     *
+     * @param percentile the percentage, from <code>0</code> to <code>100</code>
+     */
+    public double getValueAtPercentile(double percentile, TimeUnit unit) {
+        long total = 0;
+        long[] snapshot = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(total * Math.min(percentile, 100) / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return toUnit(Math.min(highestValueOf(i), max.get()), unit);
+            }
+        }
+        return toUnit(max.get(), unit);
+    }
+
+    /**
+     * Clears all recorded latencies. Latencies recorded concurrently may be
+     * partially kept.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts.set(i, 0);
+        }
+        count.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+
+    static int indexOf(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKET_COUNT - 1;
+        }
+        int shift = exponent - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKET_COUNT + (int) ((value >>> shift) - SUB_BUCKET_COUNT);
+    }
+
+    static long highestValueOf(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = index / SUB_BUCKET_COUNT - 1;
+        long lowest = (long) (SUB_BUCKET_COUNT + index % SUB_BUCKET_COUNT) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+
+    private static double toUnit(double micros, TimeUnit unit) {
+        return micros * 1000 / unit.toNanos(1);
+    }
+}
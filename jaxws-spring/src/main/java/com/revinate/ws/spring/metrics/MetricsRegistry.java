@@ -0,0 +1,21 @@
+package com.revinate.ws.spring.metrics;
+
+import javax.xml.namespace.QName;
+
+/**
+ * Holds the {@link OperationMetrics} of the endpoints, and publishes them.
+ * Implement this interface to publish them to a monitoring system.
+ *
+ * @see SimpleMetricsRegistry
+ * @see JmxMetricsRegistry
+ * @see com.revinate.ws.spring.SpringService#setMetricsRegistry(MetricsRegistry)
+ */
+public interface MetricsRegistry {
+
+    /**
+     * Returns the metrics of an operation, creating them on the first call.
+     * Called when endpoints are created, and for operations that cannot be
+     * determined in advance; must be thread-safe.
+     */
+    OperationMetrics getOperationMetrics(QName serviceName, QName portName, QName operationName);
+}
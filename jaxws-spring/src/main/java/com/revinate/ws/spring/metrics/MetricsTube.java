@@ -0,0 +1,99 @@
+package com.revinate.ws.spring.metrics;
+
+import com.revinate.ws.spring.EndpointWarmer;
+import com.sun.xml.ws.api.message.Message;
+import com.sun.xml.ws.api.message.Packet;
+import com.sun.xml.ws.api.pipe.NextAction;
+import com.sun.xml.ws.api.pipe.Tube;
+import com.sun.xml.ws.api.pipe.TubeCloner;
+import com.sun.xml.ws.api.pipe.helper.AbstractFilterTubeImpl;
+import com.sun.xml.ws.api.pipe.helper.AbstractTubeImpl;
+
+import javax.xml.namespace.QName;
+import java.util.Map;
+
+/**
+ * Tube that records the {@link OperationMetrics} of the requests going
+ * through it. It is placed at the head of the server tubeline, so that it
+ * measures the whole processing of the request, handlers included. Warm-up
+ * requests are not recorded.
+ *
+ * <p>
+ * Like every tube, each copy only processes one request at a time, so the
+ * start time of the current request is kept in a field.
+ */
+class MetricsTube extends AbstractFilterTubeImpl {
+
+    /**
+     * Metrics of the operations known when the endpoint was created. Never
+     * modified afterwards, so that it can be read without locking.
+     */
+    private final Map<QName, OperationMetrics> operations;
+
+    private final OperationMetricsFactory factory;
+
+    private boolean recording;
+
+    private long start;
+
+    private QName operation;
+
+    MetricsTube(Tube next, Map<QName, OperationMetrics> operations, OperationMetricsFactory factory) {
+        super(next);
+        this.operations = operations;
+        this.factory = factory;
+    }
+
+    private MetricsTube(MetricsTube that, TubeCloner cloner) {
+        super(that, cloner);
+        this.operations = that.operations;
+        this.factory = that.factory;
+    }
+
+    @Override
+    public AbstractTubeImpl copy(TubeCloner cloner) {
+        return new MetricsTube(this, cloner);
+    }
+
+    @Override
+    public NextAction processRequest(Packet request) {
+        recording = !EndpointWarmer.isWarmUp(request);
+        start = System.nanoTime();
+        operation = request.getWSDLOperation();
+        return super.processRequest(request);
+    }
+
+    @Override
+    public NextAction processResponse(Packet response) {
+        Message message = response.getMessage();
+        record(message != null && message.isFault(), false);
+        return super.processResponse(response);
+    }
+
+    @Override
+    public NextAction processException(Throwable t) {
+        record(false, true);
+        return super.processException(t);
+    }
+
+    private void record(boolean fault, boolean error) {
+        if (!recording) {
+            return;
+        }
+        long elapsed = System.nanoTime() - start;
+        OperationMetrics metrics = operation != null ? operations.get(operation) : null;
+        if (metrics == null) {
+            metrics = factory.get(operation);
+        }
+        metrics.record(elapsed, fault, error);
+        operation = null;
+    }
+
+    /**
+     * Provides the metrics of the operations not known in advance.
+     */
+    interface OperationMetricsFactory {
+
+        OperationMetrics get(QName operation);
+    }
+}
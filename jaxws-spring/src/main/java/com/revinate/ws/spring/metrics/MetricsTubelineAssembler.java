@@ -0,0 +1,64 @@
+package com.revinate.ws.spring.metrics;
+
+import com.sun.xml.ws.api.model.wsdl.WSDLBoundOperation;
+import com.sun.xml.ws.api.model.wsdl.WSDLPort;
+import com.sun.xml.ws.api.pipe.ClientTubeAssemblerContext;
+import com.sun.xml.ws.api.pipe.ServerTubeAssemblerContext;
+import com.sun.xml.ws.api.pipe.Tube;
+import com.sun.xml.ws.api.pipe.TubelineAssembler;
+import com.sun.xml.ws.api.server.WSEndpoint;
+
+import javax.xml.namespace.QName;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * {@link TubelineAssembler} that puts a tube recording {@link OperationMetrics}
+ * at the head of the server tubeline created by another assembler.
+ *
+ * @see com.revinate.ws.spring.SpringService#setMetricsRegistry(MetricsRegistry)
+ */
+public class MetricsTubelineAssembler implements TubelineAssembler {
+
+    /**
+     * Operation name used for requests whose operation cannot be determined.
+     */
+    public static final QName UNKNOWN_OPERATION = new QName("", "unknown");
+
+    private final TubelineAssembler delegate;
+
+    private final MetricsRegistry registry;
+
+    public MetricsTubelineAssembler(TubelineAssembler delegate, MetricsRegistry registry) {
+        this.delegate = delegate;
+        this.registry = registry;
+    }
+
+    public Tube createClient(ClientTubeAssemblerContext context) {
+        return delegate.createClient(context);
+    }
+
+    public Tube createServer(ServerTubeAssemblerContext context) {
+        Tube tube = delegate.createServer(context);
+
+        WSEndpoint<?> endpoint = context.getEndpoint();
+        final QName serviceName = endpoint.getServiceName();
+        final QName portName = endpoint.getPortName();
+
+        Map<QName, OperationMetrics> operations = new HashMap<>();
+        WSDLPort port = context.getWsdlModel();
+        if (port != null) {
+            for (WSDLBoundOperation operation : port.getBinding().getBindingOperations()) {
+                operations.put(operation.getName(),
+                        registry.getOperationMetrics(serviceName, portName, operation.getName()));
+            }
+        }
+
+        return new MetricsTube(tube, operations, new MetricsTube.OperationMetricsFactory() {
+            public OperationMetrics get(QName operation) {
+                return registry.getOperationMetrics(serviceName, portName,
+                        operation != null ? operation : UNKNOWN_OPERATION);
+            }
+        });
+    }
+}
@@ -0,0 +1,136 @@
+package com.revinate.ws.spring.metrics;
+
+import javax.xml.namespace.QName;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Request counts and latency distribution of one operation of an endpoint.
+ *
+ * <p>
+ * Requests are counted when they complete. Requests answered with a SOAP
+ * fault are also counted as faults, and requests that failed with an
+ * exception the runtime could not turn into a response are also counted
+ * as errors.
+ */
+public class OperationMetrics implements OperationMetricsMBean {
+
+    private final QName serviceName;
+
+    private final QName portName;
+
+    private final QName operationName;
+
+    private final AtomicLong requests = new AtomicLong();
+
+    private final AtomicLong faults = new AtomicLong();
+
+    private final AtomicLong errors = new AtomicLong();
+
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    public OperationMetrics(QName serviceName, QName portName, QName operationName) {
+        this.serviceName = serviceName;
+        this.portName = portName;
+        this.operationName = operationName;
+    }
+
+    /**
+     * Records a completed request.
+     *
+     * @param nanos the time taken by the request, in nanoseconds
+     * @param fault whether the request was answered with a SOAP fault
+     * @param error whether the request failed with an exception
+     */
+    public void record(long nanos, boolean fault, boolean error) {
+        requests.incrementAndGet();
+        if (fault) {
+            faults.incrementAndGet();
+        }
+        if (error) {
+            errors.incrementAndGet();
+        }
+        latency.record(nanos);
+    }
+
+    public QName getServiceQName() {
+        return serviceName;
+    }
+
+    public QName getPortQName() {
+        return portName;
+    }
+
+    public QName getOperationQName() {
+        return operationName;
+    }
+
+    /**
+     * Returns the latency distribution of the requests.
+     */
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    public String getServiceName() {
+        return serviceName.toString();
+    }
+
+    public String getPortName() {
+        return portName.toString();
+    }
+
+    public String getOperationName() {
+        return operationName.toString();
+    }
+
+    public long getRequestCount() {
+        return requests.get();
+    }
+
+    public long getFaultCount() {
+        return faults.get();
+    }
+
+    public long getErrorCount() {
+        return errors.get();
+    }
+
+    public double getMeanLatency() {
+        return latency.getMean(TimeUnit.MILLISECONDS);
+    }
+
+    public double getMaxLatency() {
+        return latency.getMax(TimeUnit.MILLISECONDS);
+    }
+
+    public double getLatency50thPercentile() {
+        return latency.getValueAtPercentile(50, TimeUnit.MILLISECONDS);
+    }
+
+    public double getLatency95thPercentile() {
+        return latency.getValueAtPercentile(95, TimeUnit.MILLISECONDS);
+    }
+
+    public double getLatency99thPercentile() {
+        return latency.getValueAtPercentile(99, TimeUnit.MILLISECONDS);
+    }
+
+    public double getLatency999thPercentile() {
+        return latency.getValueAtPercentile(99.9, TimeUnit.MILLISECONDS);
+    }
+
+    public void reset() {
+        requests.set(0);
+        faults.set(0);
+        errors.set(0);
+        latency.reset();
+    }
+
+    @Override
+    public String toString() {
+        return portName.getLocalPart() + "." + operationName.getLocalPart()
+                + "[requests=" + getRequestCount() + ", faults=" + getFaultCount() + ", errors=" + getErrorCount()
+                + ", p50=" + getLatency50thPercentile() + "ms, p99=" + getLatency99thPercentile() + "ms]";
+    }
+}
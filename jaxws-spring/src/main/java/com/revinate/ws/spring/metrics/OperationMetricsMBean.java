@@ -0,0 +1,33 @@
+package com.revinate.ws.spring.metrics;
+
+/**
+ * JMX view of {@link OperationMetrics}. Latencies are in milliseconds.
+ */
+public interface OperationMetricsMBean {
+
+    String getServiceName();
+
+    String getPortName();
+
+    String getOperationName();
+
+    long getRequestCount();
+
+    long getFaultCount();
+
+    long getErrorCount();
+
+    double getMeanLatency();
+
+    double getMaxLatency();
+
+    double getLatency50thPercentile();
+
+    double getLatency95thPercentile();
+
+    double getLatency99thPercentile();
+
+    double getLatency999thPercentile();
+
+    void reset();
+}
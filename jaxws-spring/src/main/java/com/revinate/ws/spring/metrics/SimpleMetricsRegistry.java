@@ -0,0 +1,44 @@
+package com.revinate.ws.spring.metrics;
+
+import javax.xml.namespace.QName;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * {@link MetricsRegistry} that keeps the metrics in memory.
+ */
+public class SimpleMetricsRegistry implements MetricsRegistry {
+
+    private final ConcurrentMap<List<QName>, OperationMetrics> metrics = new ConcurrentHashMap<>();
+
+    public OperationMetrics getOperationMetrics(QName serviceName, QName portName, QName operationName) {
+        List<QName> key = Arrays.asList(serviceName, portName, operationName);
+        OperationMetrics operationMetrics = metrics.get(key);
+        if (operationMetrics == null) {
+            OperationMetrics newMetrics = new OperationMetrics(serviceName, portName, operationName);
+            operationMetrics = metrics.putIfAbsent(key, newMetrics);
+            if (operationMetrics == null) {
+                operationMetrics = newMetrics;
+                register(operationMetrics);
+            }
+        }
+        return operationMetrics;
+    }
+
+    /**
+     * Returns the metrics of all the operations.
+     */
+    public Collection<OperationMetrics> getAllOperationMetrics() {
+        return new ArrayList<>(metrics.values());
+    }
+
+    /**
+     * Called when metrics are created. Does nothing by default.
+     */
+    protected void register(OperationMetrics operationMetrics) {
+    }
+}
@@ -0,0 +1,55 @@
+package com.revinate.ws.spring.startup;
+
+/**
+ * Phases of the startup of an endpoint, in the order they happen.
+ */
+public enum StartupPhase {
+
+    /**
+     * Resolving the primary WSDL and the metadata documents to
+     * {@link com.sun.xml.ws.api.server.SDDocumentSource}s, including
+     * {@link com.revinate.ws.spring.MetadataCache} lookups.
+     */
+    WSDL_RESOLUTION("wsdl"),
+
+    /**
+     * Creating the {@link com.sun.xml.ws.api.WSBinding} with its features
+     * and handler chain.
+     */
+    BINDING_CREATION("binding"),
+
+    /**
+     * Parsing the WSDL and building the SEI model, which includes creating
+     * the JAXB context.
+     */
+    MODEL_BUILDING("model"),
+
+    /**
+     * Assembling the server tubeline.
+     */
+    TUBELINE_ASSEMBLY("tubeline"),
+
+    /**
+     * The rest of {@link com.sun.xml.ws.api.server.WSEndpoint#create},
+     * such as generating or patching the service documents.
+     */
+    ENDPOINT_INITIALIZATION("init"),
+
+    /**
+     * Creating the servlet adapter of the endpoint.
+     */
+    ADAPTER_REGISTRATION("adapter");
+
+    private final String label;
+
+    StartupPhase(String label) {
+        this.label = label;
+    }
+
+    /**
+     * Returns the short name of the phase, as shown in reports.
+     */
+    public String getLabel() {
+        return label;
+    }
+}
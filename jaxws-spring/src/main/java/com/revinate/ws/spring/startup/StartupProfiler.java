@@ -0,0 +1,139 @@
+package com.revinate.ws.spring.startup;
+
+import com.revinate.ws.spring.SpringService;
+import com.sun.xml.ws.api.server.WSEndpoint;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationContextAware;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextRefreshedEvent;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Records how long each endpoint spends in each {@link StartupPhase}, to find
+ * the ports that make the application slow to start.
+ *
+ * <p>
+ * Declared as a bean, the profiler sets itself on every {@link SpringService}
+ * of the application context, and {@link com.sun.xml.ws.transport.http.servlet.WSSpringServlet}
+ * reports the adapters it registers to it. Since it is a
+ * {@link BeanPostProcessor}, declare it with a <code>static</code>
+ * <code>@Bean</code> method in Java configuration.
+ *
+ * <p>
+ * The {@link StartupReport} is logged and published as a
+ * {@link StartupReportEvent} when the application context is refreshed, and
+ * again when the servlet has registered its adapters. It can also be read at
+ * any time with {@link #getReport()}.
+ */
+public class StartupProfiler implements BeanPostProcessor, ApplicationContextAware,
+        ApplicationListener<ContextRefreshedEvent> {
+
+    private static final Log logger = LogFactory.getLog(StartupProfiler.class);
+
+    /**
+     * Nanoseconds spent in each phase, indexed by ordinal, by endpoint name.
+     */
+    private final ConcurrentMap<String, AtomicLongArray> times = new ConcurrentHashMap<>();
+
+    /**
+     * Names registered for the endpoints. Endpoints do not override
+     * <code>equals</code>, so they are compared by identity, and they are
+     * weakly referenced so that disposed endpoints can be collected.
+     */
+    private final Map<WSEndpoint<?>, String> names = Collections.synchronizedMap(new WeakHashMap<WSEndpoint<?>, String>());
+
+    private ApplicationContext applicationContext;
+
+    public void setApplicationContext(ApplicationContext applicationContext) throws BeansException {
+        this.applicationContext = applicationContext;
+    }
+
+    public Object postProcessBeforeInitialization(Object bean, String beanName) throws BeansException {
+        if (bean instanceof SpringService) {
+            ((SpringService) bean).setStartupProfiler(this);
+        }
+        return bean;
+    }
+
+    public Object postProcessAfterInitialization(Object bean, String beanName) throws BeansException {
+        return bean;
+    }
+
+    public void onApplicationEvent(ContextRefreshedEvent event) {
+        if (event.getApplicationContext() == applicationContext && !times.isEmpty()) {
+            publishReport();
+        }
+    }
+
+    /**
+     * Adds time spent by an endpoint in a phase.
+     */
+    public void record(String endpointName, StartupPhase phase, long nanos) {
+        AtomicLongArray endpointTimes = times.get(endpointName);
+        if (endpointTimes == null) {
+            AtomicLongArray created = new AtomicLongArray(StartupPhase.values().length);
+            endpointTimes = times.putIfAbsent(endpointName, created);
+            if (endpointTimes == null) {
+                endpointTimes = created;
+            }
+        }
+        endpointTimes.addAndGet(phase.ordinal(), nanos);
+    }
+
+    /**
+     * Associates a created endpoint with the name its phases are recorded
+     * under, so that later phases can be recorded by endpoint.
+     */
+    public void registerEndpoint(String endpointName, WSEndpoint<?> endpoint) {
+        names.put(endpoint, endpointName);
+    }
+
+    /**
+     * Returns the name registered for an endpoint, or {@code null} if its
+     * creation was not recorded.
+     */
+    public String getEndpointName(WSEndpoint<?> endpoint) {
+        return names.get(endpoint);
+    }
+
+    /**
+     * Returns the times recorded so far.
+     */
+    public StartupReport getReport() {
+        Map<String, long[]> snapshot = new LinkedHashMap<>();
+        for (Map.Entry<String, AtomicLongArray> entry : times.entrySet()) {
+            AtomicLongArray endpointTimes = entry.getValue();
+            long[] values = new long[endpointTimes.length()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = endpointTimes.get(i);
+            }
+            snapshot.put(entry.getKey(), values);
+        }
+        return new StartupReport(snapshot);
+    }
+
+    /**
+     * Logs the times recorded so far, and publishes them as a
+     * {@link StartupReportEvent}.
+     */
+    public void publishReport() {
+        StartupReport report = getReport();
+        if (logger.isInfoEnabled()) {
+            logger.info("Startup times of " + report.getEndpoints().size() + " endpoints in ms:\n" + report);
+        }
+        if (applicationContext != null) {
+            applicationContext.publishEvent(new StartupReportEvent(this, report));
+        }
+    }
+}
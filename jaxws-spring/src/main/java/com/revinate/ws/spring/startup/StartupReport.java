@@ -0,0 +1,126 @@
+package com.revinate.ws.spring.startup;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time spent in each {@link StartupPhase} by each endpoint, as recorded by
+ * a {@link StartupProfiler}. Endpoints are ordered from the slowest to the
+ * fastest to start.
+ */
+public class StartupReport {
+
+    private static final Comparator<EndpointStartup> SLOWEST_FIRST = new Comparator<EndpointStartup>() {
+        public int compare(EndpointStartup startup1, EndpointStartup startup2) {
+            int result = Long.compare(startup2.getTotalTime(TimeUnit.NANOSECONDS),
+                    startup1.getTotalTime(TimeUnit.NANOSECONDS));
+            return result != 0 ? result : startup1.getName().compareTo(startup2.getName());
+        }
+    };
+
+    private final List<EndpointStartup> endpoints;
+
+    StartupReport(Map<String, long[]> times) {
+        List<EndpointStartup> endpoints = new ArrayList<>(times.size());
+        for (Map.Entry<String, long[]> entry : times.entrySet()) {
+            endpoints.add(new EndpointStartup(entry.getKey(), entry.getValue()));
+        }
+        Collections.sort(endpoints, SLOWEST_FIRST);
+        this.endpoints = Collections.unmodifiableList(endpoints);
+    }
+
+    /**
+     * Returns the endpoints, slowest first.
+     */
+    public List<EndpointStartup> getEndpoints() {
+        return endpoints;
+    }
+
+    /**
+     * Returns the time spent by all endpoints in the given phase.
+     */
+    public long getTime(StartupPhase phase, TimeUnit unit) {
+        long time = 0;
+        for (EndpointStartup endpoint : endpoints) {
+            time += endpoint.getTime(phase, TimeUnit.NANOSECONDS);
+        }
+        return unit.convert(time, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Returns the time spent by all endpoints in all phases. Endpoints
+     * created in parallel make this longer than the elapsed time.
+     */
+    public long getTotalTime(TimeUnit unit) {
+        long time = 0;
+        for (EndpointStartup endpoint : endpoints) {
+            time += endpoint.getTotalTime(TimeUnit.NANOSECONDS);
+        }
+        return unit.convert(time, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Formats the report as a table, with times in milliseconds.
+     */
+    @Override
+    public String toString() {
+        int width = "endpoint".length();
+        for (EndpointStartup endpoint : endpoints) {
+            width = Math.max(width, endpoint.getName().length());
+        }
+
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%-" + width + "s", "endpoint"));
+        for (StartupPhase phase : StartupPhase.values()) {
+            sb.append(String.format(" %9s", phase.getLabel()));
+        }
+        sb.append(String.format(" %9s", "total"));
+        for (EndpointStartup endpoint : endpoints) {
+            sb.append('\n').append(String.format("%-" + width + "s", endpoint.getName()));
+            for (StartupPhase phase : StartupPhase.values()) {
+                sb.append(String.format(" %9d", endpoint.getTime(phase, TimeUnit.MILLISECONDS)));
+            }
+            sb.append(String.format(" %9d", endpoint.getTotalTime(TimeUnit.MILLISECONDS)));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Startup times of one endpoint.
+     */
+    public static class EndpointStartup {
+
+        private final String name;
+
+        private final long[] times;
+
+        EndpointStartup(String name, long[] times) {
+            this.name = name;
+            this.times = times;
+        }
+
+        /**
+         * Returns the name of the endpoint, which is the name of its
+         * {@link com.revinate.ws.spring.SpringService} bean if it has one.
+         */
+        public String getName() {
+            return name;
+        }
+
+        public long getTime(StartupPhase phase, TimeUnit unit) {
+            return unit.convert(times[phase.ordinal()], TimeUnit.NANOSECONDS);
+        }
+
+        public long getTotalTime(TimeUnit unit) {
+            long time = 0;
+            for (long phaseTime : times) {
+                time += phaseTime;
+            }
+            return unit.convert(time, TimeUnit.NANOSECONDS);
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.revinate.ws.spring.startup;
+
+import org.springframework.context.ApplicationEvent;
+
+/**
+ * Event published by a {@link StartupProfiler} with its report, once the
+ * application context has been refreshed, and again once the servlet has
+ * registered its adapters.
+ */
+public class StartupReportEvent extends ApplicationEvent {
+
+    private static final long serialVersionUID = 3052476328947961230L;
+
+    private final StartupReport report;
+
+    public StartupReportEvent(StartupProfiler source, StartupReport report) {
+        super(source);
+        this.report = report;
+    }
+
+    public StartupReport getReport() {
+        return report;
+    }
+}
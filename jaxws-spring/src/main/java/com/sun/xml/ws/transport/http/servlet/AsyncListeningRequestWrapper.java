@@ -0,0 +1,70 @@
+package com.sun.xml.ws.transport.http.servlet;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link HttpServletRequestWrapper} that adds listeners to the asynchronous
+ * context as soon as it is started, whether by the servlet or by JAX-WS.
+ *
+ * <p>
+ * Once started, the request may be completed by another thread at any time,
+ * so a listener added after the code starting it returns could miss the
+ * completion, and {@link HttpServletRequest#isAsyncStarted()} may already be
+ * back to <code>false</code>. {@link #isAsyncRegistered()} tells reliably
+ * whether the listeners took over.
+ */
+class AsyncListeningRequestWrapper extends HttpServletRequestWrapper {
+
+    private final List<AsyncListener> listeners = new ArrayList<>(2);
+
+    private boolean registered;
+
+    AsyncListeningRequestWrapper(HttpServletRequest request) {
+        super(request);
+    }
+
+    /**
+     * Adds a listener to register once the request is put into asynchronous
+     * mode. Must be called before it is.
+     */
+    void addAsyncListener(AsyncListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Returns whether the request was put into asynchronous mode, in which
+     * case the listeners are notified of its completion.
+     */
+    boolean isAsyncRegistered() {
+        return registered;
+    }
+
+    @Override
+    public AsyncContext startAsync() throws IllegalStateException {
+        return register(super.startAsync());
+    }
+
+    @Override
+    public AsyncContext startAsync(ServletRequest servletRequest, ServletResponse servletResponse)
+            throws IllegalStateException {
+        return register(super.startAsync(servletRequest, servletResponse));
+    }
+
+    private AsyncContext register(AsyncContext asyncContext) {
+        // listeners re-add themselves when asynchronous mode is restarted
+        if (!registered) {
+            registered = true;
+            for (AsyncListener listener : listeners) {
+                asyncContext.addListener(listener);
+            }
+        }
+        return asyncContext;
+    }
+}
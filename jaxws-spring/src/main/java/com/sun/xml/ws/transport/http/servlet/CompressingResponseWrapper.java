@@ -0,0 +1,367 @@
+package com.sun.xml.ws.transport.http.servlet;
+
+import com.revinate.ws.spring.BufferPool;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * {@link HttpServletResponseWrapper} that compresses the response body as it
+ * is written, once it is known to be larger than a threshold.
+ *
+ * <p>
+ * Up to <code>threshold</code> bytes are held back. If the body ends before
+ * that, it is sent as is, with its length; otherwise compression starts and
+ * the body is streamed through a deflater, so the whole message is never
+ * held in memory. A content length set before the body is written decides
+ * right away.
+ *
+ * <p>
+ * Compression only supports blocking writes. Setting a {@link WriteListener}
+ * before the body is written sends it uncompressed, straight to the response
+ * of the container, which then notifies the listener.
+ */
+class CompressingResponseWrapper extends HttpServletResponseWrapper {
+
+    private final String coding;
+
+    private final int threshold;
+
+    private final int level;
+
+    private final int bufferSize;
+
+    private final BufferPool bufferPool;
+
+    private CompressingOutputStream outputStream;
+
+    private PrintWriter writer;
+
+    /**
+     * Length of the body set by the application, or <code>-1</code> if unknown.
+     */
+    private long contentLength = -1;
+
+    /**
+     * @param coding the content coding, either {@link ContentEncodings#GZIP}
+     * or {@link ContentEncodings#DEFLATE}
+     * @param threshold the minimum size in bytes of compressed bodies
+     * @param level the compression level, from <code>0</code> to <code>9</code>,
+     * or {@link Deflater#DEFAULT_COMPRESSION}
+     * @param bufferSize the size of the buffer holding compressed data
+     * @param bufferPool the pool buffers are taken from
+     */
+    CompressingResponseWrapper(HttpServletResponse response, String coding, int threshold, int level,
+                               int bufferSize, BufferPool bufferPool) {
+        super(response);
+        this.coding = coding;
+        this.threshold = threshold;
+        this.level = level;
+        this.bufferSize = bufferSize;
+        this.bufferPool = bufferPool;
+    }
+
+    /**
+     * Sends the rest of the body, and finishes compression if started.
+     * Called when the request has been processed, or when the body is closed.
+     */
+    void finish() throws IOException {
+        if (writer != null) {
+            writer.flush();
+        }
+        if (outputStream != null) {
+            outputStream.finish();
+        }
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() {
+        if (writer != null) {
+            throw new IllegalStateException("getWriter() has already been called");
+        }
+        if (outputStream == null) {
+            outputStream = new CompressingOutputStream();
+        }
+        return outputStream;
+    }
+
+    @Override
+    public PrintWriter getWriter() throws IOException {
+        if (writer == null) {
+            if (outputStream != null) {
+                throw new IllegalStateException("getOutputStream() has already been called");
+            }
+            outputStream = new CompressingOutputStream();
+            writer = new PrintWriter(new OutputStreamWriter(outputStream, getCharacterEncoding()));
+        }
+        return writer;
+    }
+
+    @Override
+    public void setContentLength(int len) {
+        setContentLengthLong(len);
+    }
+
+    @Override
+    public void setContentLengthLong(long len) {
+        contentLength = len;
+        if (outputStream != null && outputStream.out != null && !outputStream.compressing) {
+            super.setContentLengthLong(len);
+        }
+    }
+
+    @Override
+    public void setHeader(String name, String value) {
+        if ("Content-Length".equalsIgnoreCase(name)) {
+            setContentLengthLong(Long.parseLong(value));
+        } else {
+            super.setHeader(name, value);
+        }
+    }
+
+    @Override
+    public void addHeader(String name, String value) {
+        if ("Content-Length".equalsIgnoreCase(name)) {
+            setContentLengthLong(Long.parseLong(value));
+        } else {
+            super.addHeader(name, value);
+        }
+    }
+
+    @Override
+    public void setIntHeader(String name, int value) {
+        if ("Content-Length".equalsIgnoreCase(name)) {
+            setContentLengthLong(value);
+        } else {
+            super.setIntHeader(name, value);
+        }
+    }
+
+    @Override
+    public void addIntHeader(String name, int value) {
+        if ("Content-Length".equalsIgnoreCase(name)) {
+            setContentLengthLong(value);
+        } else {
+            super.addIntHeader(name, value);
+        }
+    }
+
+    @Override
+    public void flushBuffer() throws IOException {
+        if (outputStream == null || outputStream.out != null) {
+            super.flushBuffer();
+        }
+    }
+
+    @Override
+    public void resetBuffer() {
+        super.resetBuffer();
+        if (outputStream != null && outputStream.out == null) {
+            outputStream.count = 0;
+        }
+    }
+
+    @Override
+    public void reset() {
+        super.reset();
+        contentLength = -1;
+        if (outputStream != null && outputStream.out == null) {
+            outputStream.count = 0;
+        }
+    }
+
+    private boolean isCompressible() {
+        int status = getStatus();
+        return status != SC_NO_CONTENT && status != SC_NOT_MODIFIED
+                && getHeader("Content-Encoding") == null;
+    }
+
+    private class CompressingOutputStream extends ServletOutputStream {
+
+        /**
+         * Bytes held back until the decision to compress is made.
+         */
+        private byte[] pending;
+
+        private int count;
+
+        /**
+         * Stream the body is written to once the decision is made,
+         * or {@code null} before.
+         */
+        private OutputStream out;
+
+        private boolean compressing;
+
+        private boolean finished;
+
+        /**
+         * Whether a write listener was set, making writes non-blocking.
+         */
+        private boolean nonBlocking;
+
+        /**
+         * Buffer reused by {@link #write(int)}.
+         */
+        private final byte[] single = new byte[1];
+
+        @Override
+        public void write(int b) throws IOException {
+            single[0] = (byte) b;
+            write(single, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (out == null) {
+                if (contentLength >= 0) {
+                    start(contentLength > threshold);
+                } else if (count + len > threshold) {
+                    start(true);
+                } else {
+                    if (pending == null) {
+                        pending = bufferPool.acquire(Math.max(threshold, 1));
+                    }
+                    System.arraycopy(b, off, pending, count, len);
+                    count += len;
+                    return;
+                }
+            }
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            // held back bytes are kept until the decision is made
+            if (out != null) {
+                out.flush();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            finish();
+            getResponse().getOutputStream().close();
+        }
+
+        void finish() throws IOException {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            if (out == null) {
+                if (count == 0 && contentLength < 0) {
+                    // no body
+                    return;
+                }
+                start(false);
+            }
+            if (out instanceof DeflaterOutputStream) {
+                ((DeflaterOutputStream) out).finish();
+            }
+            // non-blocking writes are flushed by the container
+            if (!nonBlocking) {
+                out.flush();
+            }
+        }
+
+        private void start(boolean compress) throws IOException {
+            OutputStream raw = getResponse().getOutputStream();
+            compressing = compress && isCompressible();
+            if (compressing) {
+                CompressingResponseWrapper.super.setHeader("Content-Encoding", coding);
+                CompressingResponseWrapper.super.addHeader("Vary", "Accept-Encoding");
+                out = ContentEncodings.GZIP.equals(coding)
+                        ? new LeveledGZIPOutputStream(raw, bufferPool.acquire(bufferSize), level)
+                        : new ReleasingDeflaterOutputStream(raw, new Deflater(level), bufferPool.acquire(bufferSize));
+            } else {
+                CompressingResponseWrapper.super.setContentLengthLong(contentLength >= 0 ? contentLength : count);
+                out = raw;
+            }
+            if (count > 0) {
+                out.write(pending, 0, count);
+            }
+            if (pending != null) {
+                bufferPool.release(pending);
+                pending = null;
+            }
+            count = 0;
+        }
+
+        @Override
+        public boolean isReady() {
+            // held back bytes and blocking writes are always accepted
+            return !nonBlocking || ((ServletOutputStream) out).isReady();
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+            if (!nonBlocking) {
+                if (out != null || count > 0) {
+                    throw new IllegalStateException("The response body is already being written in blocking mode");
+                }
+                try {
+                    out = getResponse().getOutputStream();
+                } catch (IOException e) {
+                    writeListener.onError(e);
+                    return;
+                }
+                if (contentLength >= 0) {
+                    CompressingResponseWrapper.super.setContentLengthLong(contentLength);
+                }
+                nonBlocking = true;
+            }
+            ((ServletOutputStream) out).setWriteListener(writeListener);
+        }
+    }
+
+    /**
+     * Deflater streams are created with a one-byte buffer, which is replaced
+     * with a pooled one, and return it to the pool when finished.
+     */
+    private class LeveledGZIPOutputStream extends GZIPOutputStream {
+
+        LeveledGZIPOutputStream(OutputStream out, byte[] buffer, int level) throws IOException {
+            super(out, 1);
+            buf = buffer;
+            def.setLevel(level);
+        }
+
+        @Override
+        public void finish() throws IOException {
+            super.finish();
+            def.end();
+            if (buf != null) {
+                bufferPool.release(buf);
+                buf = null;
+            }
+        }
+    }
+
+    private class ReleasingDeflaterOutputStream extends DeflaterOutputStream {
+
+        ReleasingDeflaterOutputStream(OutputStream out, Deflater def, byte[] buffer) {
+            super(out, def, 1);
+            buf = buffer;
+        }
+
+        @Override
+        public void finish() throws IOException {
+            super.finish();
+            def.end();
+            if (buf != null) {
+                bufferPool.release(buf);
+                buf = null;
+            }
+        }
+    }
+}
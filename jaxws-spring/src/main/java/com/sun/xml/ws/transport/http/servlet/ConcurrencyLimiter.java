@@ -0,0 +1,137 @@
+package com.sun.xml.ws.transport.http.servlet;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Adaptive limit on the number of requests processed concurrently by an
+ * endpoint, adjusted from the measured processing times.
+ *
+ * <p>
+ * The limit follows an AIMD (additive increase, multiplicative decrease)
+ * scheme. The latency of an unloaded endpoint is estimated as the minimum
+ * processing time over a window of recent requests. A request taking longer
+ * than <code>tolerance</code> times that estimate, or timing out, is a sign
+ * of overload and shrinks the limit by {@link #BACKOFF_RATIO}; other requests
+ * grow it by one per limit's worth of requests, as long as at least half of
+ * the limit is in use. Requests over the limit are meant to be rejected
+ * right away, so that queueing does not increase latency.
+ */
+class ConcurrencyLimiter {
+
+    static final double BACKOFF_RATIO = 0.9;
+
+    /**
+     * Number of requests over which the minimum processing time is measured.
+     */
+    private static final int WINDOW_SIZE = 500;
+
+    private final int minLimit;
+
+    private final int maxLimit;
+
+    private final double tolerance;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    /**
+     * Current limit, only written while holding the lock on this limiter.
+     */
+    private volatile double limit;
+
+    private long noLoadLatency = Long.MAX_VALUE;
+
+    private long windowMinLatency = Long.MAX_VALUE;
+
+    private int windowCount;
+
+    ConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, double tolerance) {
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.tolerance = tolerance;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+    }
+
+    /**
+     * Returns the current limit.
+     */
+    int getLimit() {
+        return (int) limit;
+    }
+
+    /**
+     * Admits a request if the limit allows it. Every admitted request must be
+     * followed by a call to {@link #release(long, boolean)}.
+     */
+    boolean tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= (int) limit) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Ends an admitted request, and adjusts the limit.
+     *
+     * @param latency the processing time of the request, in nanoseconds
+     * @param dropped whether the request timed out
+     */
+    void release(long latency, boolean dropped) {
+        int current = inFlight.getAndDecrement();
+        synchronized (this) {
+            windowMinLatency = Math.min(windowMinLatency, latency);
+            if (++windowCount >= WINDOW_SIZE) {
+                noLoadLatency = windowMinLatency;
+                windowMinLatency = Long.MAX_VALUE;
+                windowCount = 0;
+            }
+            long expected = Math.min(noLoadLatency, windowMinLatency);
+
+            double limit = this.limit;
+            if (dropped || latency > tolerance * expected) {
+                limit = Math.max(minLimit, limit * BACKOFF_RATIO);
+            } else if (current * 2 >= limit) {
+                limit = Math.min(maxLimit, limit + 1 / limit);
+            }
+            this.limit = limit;
+        }
+    }
+
+    /**
+     * Releases an admitted request once its asynchronous processing completes.
+     */
+    static class AsyncRelease implements AsyncListener {
+
+        private final ConcurrencyLimiter limiter;
+
+        private final long start;
+
+        private volatile boolean timedOut;
+
+        AsyncRelease(ConcurrencyLimiter limiter, long start) {
+            this.limiter = limiter;
+            this.start = start;
+        }
+
+        public void onComplete(AsyncEvent event) {
+            limiter.release(System.nanoTime() - start, timedOut);
+        }
+
+        public void onTimeout(AsyncEvent event) {
+            timedOut = true;
+        }
+
+        public void onError(AsyncEvent event) {}
+
+        public void onStartAsync(AsyncEvent event) {
+            // the request is still in flight
+            event.getAsyncContext().addListener(this);
+        }
+    }
+}
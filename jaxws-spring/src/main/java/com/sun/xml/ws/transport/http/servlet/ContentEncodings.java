@@ -0,0 +1,76 @@
+package com.sun.xml.ws.transport.http.servlet;
+
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * HTTP content codings supported by {@link WSSpringServlet}.
+ */
+final class ContentEncodings {
+
+    static final String GZIP = "gzip";
+
+    static final String DEFLATE = "deflate";
+
+    private ContentEncodings() {}
+
+    /**
+     * Returns whether the <tt>Accept-Encoding</tt> header of the request
+     * allows the given content coding.
+     */
+    static boolean accepts(HttpServletRequest request, String coding) {
+        String acceptEncoding = request.getHeader("Accept-Encoding");
+        if (acceptEncoding == null) {
+            return false;
+        }
+
+        Boolean wildcard = null;
+        for (String element : acceptEncoding.split(",")) {
+            String[] parts = element.trim().split(";");
+            String name = parts[0].trim();
+            boolean accepted = parts.length < 2 || !isZeroQuality(parts[1]);
+            if (name.equalsIgnoreCase(coding)
+                    || (GZIP.equals(coding) && name.equalsIgnoreCase("x-gzip"))) {
+                return accepted;
+            }
+            if (name.equals("*")) {
+                wildcard = accepted;
+            }
+        }
+        return wildcard != null && wildcard;
+    }
+
+    /**
+     * Returns the content coding to compress the response with, preferring
+     * gzip, or {@code null} if the request does not allow any.
+     */
+    static String negotiate(HttpServletRequest request) {
+        if (accepts(request, GZIP)) {
+            return GZIP;
+        } else if (accepts(request, DEFLATE)) {
+            return DEFLATE;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the supported content coding of the request body,
+     * or {@code null} if it is not compressed with a supported coding.
+     */
+    static String getRequestCoding(HttpServletRequest request) {
+        String contentEncoding = request.getHeader("Content-Encoding");
+        if (contentEncoding == null) {
+            return null;
+        }
+        contentEncoding = contentEncoding.trim();
+        if (contentEncoding.equalsIgnoreCase(GZIP) || contentEncoding.equalsIgnoreCase("x-gzip")) {
+            return GZIP;
+        } else if (contentEncoding.equalsIgnoreCase(DEFLATE)) {
+            return DEFLATE;
+        }
+        return null;
+    }
+
+    private static boolean isZeroQuality(String parameter) {
+        return parameter.replace(" ", "").matches("[qQ]=0(\\.0{0,3})?");
+    }
+}
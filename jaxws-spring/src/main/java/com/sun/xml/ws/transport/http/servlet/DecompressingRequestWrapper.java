@@ -0,0 +1,279 @@
+package com.sun.xml.ws.transport.http.servlet;
+
+import com.revinate.ws.spring.BufferPool;
+
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PushbackInputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * {@link HttpServletRequestWrapper} that decompresses a gzip or deflate
+ * request body as it is read, and hides the <tt>Content-Encoding</tt> and
+ * <tt>Content-Length</tt> headers of the compressed body.
+ *
+ * <p>
+ * Reading more than the maximum size fails with an {@link IOException}, and
+ * replaces the response with <tt>413 Request Entity Too Large</tt>, so that
+ * small compressed bodies cannot inflate into unbounded amounts of data.
+ *
+ * <p>
+ * The body can only be read in blocking mode, since the inflater reads the
+ * compressed body as it needs, so setting a {@link ReadListener} fails.
+ */
+class DecompressingRequestWrapper extends HttpServletRequestWrapper {
+
+    private final String coding;
+
+    private final long maxSize;
+
+    private final RejectingResponseWrapper response;
+
+    private final int bufferSize;
+
+    private final BufferPool bufferPool;
+
+    private ServletInputStream inputStream;
+
+    private BufferedReader reader;
+
+    /**
+     * @param coding the content coding of the body, as returned by
+     * {@link ContentEncodings#getRequestCoding(HttpServletRequest)}
+     * @param maxSize the maximum size in bytes of the decompressed body,
+     * or <code>-1</code> if unlimited
+     * @param response the response to reject if the body exceeds the maximum size
+     * @param bufferSize the size of the buffer holding compressed data
+     * @param bufferPool the pool buffers are taken from
+     */
+    DecompressingRequestWrapper(HttpServletRequest request, String coding, long maxSize,
+                                RejectingResponseWrapper response, int bufferSize, BufferPool bufferPool) {
+        super(request);
+        this.coding = coding;
+        this.maxSize = maxSize;
+        this.response = response;
+        this.bufferSize = bufferSize;
+        this.bufferPool = bufferPool;
+    }
+
+    /**
+     * Releases the resources of the body, if read.
+     * Called when the request has been processed.
+     */
+    void finish() throws IOException {
+        if (inputStream != null) {
+            inputStream.close();
+        }
+    }
+
+    @Override
+    public ServletInputStream getInputStream() throws IOException {
+        if (reader != null) {
+            throw new IllegalStateException("getReader() has already been called");
+        }
+        if (inputStream == null) {
+            inputStream = new DecompressingInputStream(createInflaterStream(super.getInputStream()));
+        }
+        return inputStream;
+    }
+
+    @Override
+    public BufferedReader getReader() throws IOException {
+        if (reader == null) {
+            String encoding = getCharacterEncoding();
+            reader = new BufferedReader(new InputStreamReader(getInputStream(),
+                    encoding != null ? encoding : "ISO-8859-1"));
+        }
+        return reader;
+    }
+
+    @Override
+    public int getContentLength() {
+        return -1;
+    }
+
+    @Override
+    public long getContentLengthLong() {
+        return -1;
+    }
+
+    @Override
+    public String getHeader(String name) {
+        return isHidden(name) ? null : super.getHeader(name);
+    }
+
+    @Override
+    public Enumeration<String> getHeaders(String name) {
+        if (isHidden(name)) {
+            return Collections.emptyEnumeration();
+        }
+        return super.getHeaders(name);
+    }
+
+    @Override
+    public int getIntHeader(String name) {
+        return isHidden(name) ? -1 : super.getIntHeader(name);
+    }
+
+    @Override
+    public Enumeration<String> getHeaderNames() {
+        List<String> names = new ArrayList<>();
+        Enumeration<String> e = super.getHeaderNames();
+        while (e.hasMoreElements()) {
+            String name = e.nextElement();
+            if (!isHidden(name)) {
+                names.add(name);
+            }
+        }
+        return Collections.enumeration(names);
+    }
+
+    private static boolean isHidden(String name) {
+        return "Content-Encoding".equalsIgnoreCase(name) || "Content-Length".equalsIgnoreCase(name);
+    }
+
+    private InputStream createInflaterStream(InputStream in) throws IOException {
+        if (ContentEncodings.GZIP.equals(coding)) {
+            return new PooledGZIPInputStream(in);
+        }
+
+        // "deflate" should be zlib-wrapped, but some clients send raw deflate data
+        PushbackInputStream pushback = new PushbackInputStream(in, 2);
+        byte[] header = new byte[2];
+        int length = 0;
+        while (length < 2) {
+            int read = pushback.read(header, length, 2 - length);
+            if (read < 0) {
+                break;
+            }
+            length += read;
+        }
+        pushback.unread(header, 0, length);
+        boolean zlib = length == 2
+                && (header[0] & 0x0f) == 8
+                && (((header[0] & 0xff) << 8) | (header[1] & 0xff)) % 31 == 0;
+        return new PooledInflaterInputStream(pushback, new Inflater(!zlib));
+    }
+
+    /**
+     * Inflater streams are created with a one-byte buffer, which is replaced
+     * with a pooled one, and return it to the pool when closed.
+     */
+    private class PooledGZIPInputStream extends GZIPInputStream {
+
+        PooledGZIPInputStream(InputStream in) throws IOException {
+            super(in, 1);
+            buf = bufferPool.acquire(bufferSize);
+        }
+
+        @Override
+        public void close() throws IOException {
+            super.close();
+            if (buf != null) {
+                bufferPool.release(buf);
+                buf = null;
+            }
+        }
+    }
+
+    private class PooledInflaterInputStream extends InflaterInputStream {
+
+        PooledInflaterInputStream(InputStream in, Inflater inf) {
+            super(in, inf, 1);
+            buf = bufferPool.acquire(bufferSize);
+        }
+
+        @Override
+        public void close() throws IOException {
+            super.close();
+            inf.end();
+            if (buf != null) {
+                bufferPool.release(buf);
+                buf = null;
+            }
+        }
+    }
+
+    private class DecompressingInputStream extends ServletInputStream {
+
+        private final InputStream in;
+
+        private long count;
+
+        private boolean finished;
+
+        DecompressingInputStream(InputStream in) {
+            this.in = in;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b < 0) {
+                finished = true;
+            } else {
+                count(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = in.read(b, off, len);
+            if (read < 0) {
+                finished = true;
+            } else {
+                count(read);
+            }
+            return read;
+        }
+
+        private void count(int read) throws IOException {
+            count += read;
+            if (maxSize >= 0 && count > maxSize) {
+                finished = true;
+                response.reject(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+                throw new IOException("Decompressed request body exceeds " + maxSize + " bytes");
+            }
+        }
+
+        @Override
+        public int available() throws IOException {
+            return in.available();
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+
+        @Override
+        public boolean isFinished() {
+            return finished;
+        }
+
+        @Override
+        public boolean isReady() {
+            // reads block until data is available, as no listener can be set
+            return true;
+        }
+
+        @Override
+        public void setReadListener(ReadListener readListener) {
+            throw new IllegalStateException("Compressed request bodies can only be read in blocking mode");
+        }
+    }
+}
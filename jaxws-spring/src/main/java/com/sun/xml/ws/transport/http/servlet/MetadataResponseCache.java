@@ -0,0 +1,196 @@
+package com.sun.xml.ws.transport.http.servlet;
+
+import com.sun.xml.ws.api.server.WSEndpoint;
+
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Cache of the <tt>?wsdl</tt> and <tt>?xsd=N</tt> documents served by
+ * {@link WSSpringServlet}.
+ *
+ * <p>
+ * Documents are generated once by the {@link WSServletDelegate}, with the
+ * addresses patched for the base address of the request, and kept along with
+ * a gzip-compressed copy and an entity tag. Entries are keyed by base address,
+ * path and query, and are dropped when the endpoint serving the path changes.
+ * The least recently used entries are evicted beyond the maximum size.
+ */
+class MetadataResponseCache {
+
+    private final Map<String, CachedDocument> entries;
+
+    MetadataResponseCache(final int maxSize) {
+        this.entries = new LinkedHashMap<String, CachedDocument>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedDocument> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * Returns whether the query string asks for a WSDL or schema document,
+     * as in {@link com.sun.xml.ws.transport.http.HttpAdapter}.
+     */
+    static boolean isMetadataQuery(String query) {
+        return query != null && (query.equals("WSDL") || query.startsWith("wsdl") || query.startsWith("xsd="));
+    }
+
+    /**
+     * Serves a metadata request from the cache, generating the document with
+     * the delegate first if needed.
+     */
+    void doGet(HttpServletRequest request, HttpServletResponse response, ServletContext context,
+               WSServletDelegate delegate, ServletAdapter target) throws ServletException, IOException {
+        String key = getKey(request);
+        WSEndpoint<?> endpoint = target.getEndpoint();
+
+        CachedDocument entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+        }
+        if (entry == null || entry.endpoint != endpoint) {
+            CapturingResponseWrapper capture = new CapturingResponseWrapper(response);
+            delegate.doGet(request, capture, context);
+            byte[] body = capture.getBody();
+            if (response.getStatus() != HttpServletResponse.SC_OK) {
+                // errors are sent as generated, and not cached
+                response.setContentLength(body.length);
+                response.getOutputStream().write(body);
+                return;
+            }
+
+            entry = new CachedDocument(endpoint, response.getContentType(), body);
+            synchronized (entries) {
+                entries.put(key, entry);
+            }
+        } else {
+            response.setContentType(entry.contentType);
+        }
+
+        send(entry, request, response);
+    }
+
+    /**
+     * Removes all entries.
+     */
+    void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    private static void send(CachedDocument entry, HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+        boolean gzip = entry.gzipBody != null && ContentEncodings.accepts(request, ContentEncodings.GZIP);
+        String etag = gzip ? entry.gzipEtag : entry.etag;
+
+        response.setHeader("ETag", etag);
+        response.addHeader("Vary", "Accept-Encoding");
+        if (matches(request.getHeader("If-None-Match"), etag)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        byte[] body = entry.body;
+        if (gzip) {
+            response.setHeader("Content-Encoding", "gzip");
+            body = entry.gzipBody;
+        }
+        response.setContentLength(body.length);
+        response.getOutputStream().write(body);
+    }
+
+    private static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String tag : ifNoneMatch.split(",")) {
+            tag = tag.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals("*") || tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String getKey(HttpServletRequest request) {
+        StringBuilder key = new StringBuilder();
+        key.append(request.getScheme()).append("://")
+                .append(request.getServerName()).append(':').append(request.getServerPort())
+                .append(request.getContextPath())
+                .append(request.getServletPath());
+        if (request.getPathInfo() != null) {
+            key.append(request.getPathInfo());
+        }
+        key.append('?').append(request.getQueryString());
+        return key.toString();
+    }
+
+    private static final class CachedDocument {
+
+        final WSEndpoint<?> endpoint;
+
+        final String contentType;
+
+        final byte[] body;
+
+        final String etag;
+
+        /**
+         * Compressed body, or {@code null} if compressing does not make it smaller.
+         */
+        final byte[] gzipBody;
+
+        final String gzipEtag;
+
+        CachedDocument(WSEndpoint<?> endpoint, String contentType, byte[] body) throws IOException {
+            this.endpoint = endpoint;
+            this.contentType = contentType;
+            this.body = body;
+            String hash = hash(body);
+            this.etag = '"' + hash + '"';
+            byte[] gzipBody = gzip(body);
+            this.gzipBody = gzipBody.length < body.length ? gzipBody : null;
+            this.gzipEtag = '"' + hash + "-gzip\"";
+        }
+
+        private static byte[] gzip(byte[] body) throws IOException {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(body.length / 4 + 64);
+            try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+                gzip.write(body);
+            }
+            return out.toByteArray();
+        }
+
+        private static String hash(byte[] body) {
+            byte[] digest;
+            try {
+                digest = MessageDigest.getInstance("SHA-1").digest(body);
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xf, 16));
+                hex.append(Character.forDigit(b & 0xf, 16));
+            }
+            return hex.toString();
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package com.sun.xml.ws.transport.http.servlet;
+
+import com.revinate.ws.spring.SpringService;
+import com.sun.xml.ws.api.server.WSEndpoint;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches the WSDL and schema files of the {@link SpringService}s of the
+ * bindings of a servlet, and reloads the endpoints of a service in the
+ * background when one of its files changes.
+ *
+ * <p>
+ * A reload waits until no file has changed for the reload delay, so that
+ * files saved together are picked up at once. The new endpoint of the
+ * service is then swapped into the {@link SpringServletDelegate}; requests
+ * already routed to the previous one complete on it. When the new endpoint
+ * cannot be created, for instance because a document is invalid, the
+ * previous one keeps serving requests.
+ */
+class MetadataWatcher implements Runnable {
+
+    private static final Log logger = LogFactory.getLog(MetadataWatcher.class);
+
+    private final SpringServletDelegate delegate;
+
+    private final long delay;
+
+    private final WatchService watchService;
+
+    /**
+     * Services by the files they read.
+     */
+    private final Map<Path, Set<SpringService>> services;
+
+    /**
+     * Watched directories by key.
+     */
+    private final Map<WatchKey, Path> directories = new HashMap<>();
+
+    private Thread thread;
+
+    private MetadataWatcher(SpringServletDelegate delegate, long delay, WatchService watchService,
+                            Map<Path, Set<SpringService>> services) {
+        this.delegate = delegate;
+        this.delay = delay;
+        this.watchService = watchService;
+        this.services = services;
+    }
+
+    /**
+     * Starts watching the files of the services of the given bindings.
+     * Returns {@code null} if none of them reads its documents from files.
+     */
+    static MetadataWatcher start(SpringServletDelegate delegate, Collection<SpringBinding> bindings, long delay)
+            throws IOException {
+        Map<Path, Set<SpringService>> services = new HashMap<>();
+        for (SpringBinding binding : bindings) {
+            SpringService service = binding.getServiceFactory();
+            if (service == null) {
+                continue;
+            }
+            for (Path file : service.getMetadataFiles()) {
+                file = file.toAbsolutePath().normalize();
+                Set<SpringService> fileServices = services.get(file);
+                if (fileServices == null) {
+                    fileServices = new LinkedHashSet<>();
+                    services.put(file, fileServices);
+                }
+                fileServices.add(service);
+            }
+        }
+        if (services.isEmpty()) {
+            return null;
+        }
+
+        MetadataWatcher watcher = new MetadataWatcher(delegate, delay,
+                FileSystems.getDefault().newWatchService(), services);
+        try {
+            for (Path file : services.keySet()) {
+                Path dir = file.getParent();
+                if (!watcher.directories.containsValue(dir)) {
+                    WatchKey key = dir.register(watcher.watchService,
+                            StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+                    watcher.directories.put(key, dir);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            watcher.watchService.close();
+            throw e;
+        }
+
+        watcher.thread = new Thread(watcher, "jaxws-spring-metadata-watcher");
+        watcher.thread.setDaemon(true);
+        watcher.thread.setContextClassLoader(Thread.currentThread().getContextClassLoader());
+        watcher.thread.start();
+        logger.info("Watching " + services.size() + " metadata files in "
+                + watcher.directories.size() + " directories");
+        return watcher;
+    }
+
+    /**
+     * Stops watching files. A reload in progress still completes.
+     */
+    void stop() {
+        thread.interrupt();
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            logger.debug("Failed to close watch service", e);
+        }
+    }
+
+    public void run() {
+        try {
+            while (true) {
+                Map<SpringService, Set<Path>> changes = new LinkedHashMap<>();
+                collect(watchService.take(), changes);
+                // wait for the files being saved to settle
+                WatchKey key;
+                while ((key = watchService.poll(delay, TimeUnit.MILLISECONDS)) != null) {
+                    collect(key, changes);
+                }
+                for (Map.Entry<SpringService, Set<Path>> change : changes.entrySet()) {
+                    if (Thread.currentThread().isInterrupted()) {
+                        return;
+                    }
+                    reload(change.getKey(), change.getValue());
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // stopped
+        }
+    }
+
+    /**
+     * Adds the services reading the files changed according to a key,
+     * along with these files, to <code>changes</code>.
+     */
+    private void collect(WatchKey key, Map<SpringService, Set<Path>> changes) {
+        Path dir = directories.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                // events were lost, so any file of the directory may have changed
+                for (Path file : services.keySet()) {
+                    if (file.getParent().equals(dir)) {
+                        addChange(file, changes);
+                    }
+                }
+            } else {
+                addChange(dir.resolve((Path) event.context()), changes);
+            }
+        }
+        key.reset();
+    }
+
+    private void addChange(Path file, Map<SpringService, Set<Path>> changes) {
+        Set<SpringService> fileServices = services.get(file);
+        if (fileServices == null) {
+            return;
+        }
+        for (SpringService service : fileServices) {
+            Set<Path> files = changes.get(service);
+            if (files == null) {
+                files = new LinkedHashSet<>();
+                changes.put(service, files);
+            }
+            files.add(file);
+        }
+    }
+
+    private void reload(SpringService service, Set<Path> files) {
+        long start = System.nanoTime();
+        WSEndpoint<?> endpoint;
+        try {
+            endpoint = service.reload();
+        } catch (Exception e) {
+            logger.warn("Failed to reload endpoint after changes to " + files
+                    + ", the previous endpoint is kept", e);
+            return;
+        }
+        if (delegate.replace(service, endpoint)) {
+            logger.info("Reloaded endpoint " + endpoint.getPortName() + " after changes to " + files + " in "
+                    + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+        }
+    }
+}
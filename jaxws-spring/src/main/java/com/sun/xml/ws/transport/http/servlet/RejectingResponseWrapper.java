@@ -0,0 +1,229 @@
+package com.sun.xml.ws.transport.http.servlet;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+
+/**
+ * {@link HttpServletResponseWrapper} whose response can be replaced with an
+ * error status while the request is being processed. Once rejected, whatever
+ * the code processing the request writes is discarded.
+ */
+class RejectingResponseWrapper extends HttpServletResponseWrapper {
+
+    private volatile boolean rejected;
+
+    private ServletOutputStream discarded;
+
+    private PrintWriter discardedWriter;
+
+    RejectingResponseWrapper(HttpServletResponse response) {
+        super(response);
+    }
+
+    /**
+     * Replaces the response with the given status, and closes the
+     * connection, unless the response is already committed.
+     */
+    void reject(int status) {
+        if (rejected || getResponse().isCommitted()) {
+            return;
+        }
+        rejected = true;
+        HttpServletResponse response = (HttpServletResponse) getResponse();
+        response.reset();
+        response.setStatus(status);
+        response.setHeader("Connection", "close");
+    }
+
+    boolean isRejected() {
+        return rejected;
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() throws IOException {
+        if (!rejected) {
+            return super.getOutputStream();
+        }
+        if (discarded == null) {
+            discarded = new DiscardingOutputStream();
+        }
+        return discarded;
+    }
+
+    @Override
+    public PrintWriter getWriter() throws IOException {
+        if (!rejected) {
+            return super.getWriter();
+        }
+        if (discardedWriter == null) {
+            discardedWriter = new PrintWriter(new OutputStreamWriter(getOutputStream(), "UTF-8"));
+        }
+        return discardedWriter;
+    }
+
+    @Override
+    public void setStatus(int sc) {
+        if (!rejected) {
+            super.setStatus(sc);
+        }
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public void setStatus(int sc, String sm) {
+        if (!rejected) {
+            super.setStatus(sc, sm);
+        }
+    }
+
+    @Override
+    public void sendError(int sc) throws IOException {
+        if (!rejected) {
+            super.sendError(sc);
+        }
+    }
+
+    @Override
+    public void sendError(int sc, String msg) throws IOException {
+        if (!rejected) {
+            super.sendError(sc, msg);
+        }
+    }
+
+    @Override
+    public void sendRedirect(String location) throws IOException {
+        if (!rejected) {
+            super.sendRedirect(location);
+        }
+    }
+
+    @Override
+    public void setHeader(String name, String value) {
+        if (!rejected) {
+            super.setHeader(name, value);
+        }
+    }
+
+    @Override
+    public void addHeader(String name, String value) {
+        if (!rejected) {
+            super.addHeader(name, value);
+        }
+    }
+
+    @Override
+    public void setIntHeader(String name, int value) {
+        if (!rejected) {
+            super.setIntHeader(name, value);
+        }
+    }
+
+    @Override
+    public void addIntHeader(String name, int value) {
+        if (!rejected) {
+            super.addIntHeader(name, value);
+        }
+    }
+
+    @Override
+    public void setDateHeader(String name, long date) {
+        if (!rejected) {
+            super.setDateHeader(name, date);
+        }
+    }
+
+    @Override
+    public void addDateHeader(String name, long date) {
+        if (!rejected) {
+            super.addDateHeader(name, date);
+        }
+    }
+
+    @Override
+    public void addCookie(Cookie cookie) {
+        if (!rejected) {
+            super.addCookie(cookie);
+        }
+    }
+
+    @Override
+    public void setContentType(String type) {
+        if (!rejected) {
+            super.setContentType(type);
+        }
+    }
+
+    @Override
+    public void setCharacterEncoding(String charset) {
+        if (!rejected) {
+            super.setCharacterEncoding(charset);
+        }
+    }
+
+    @Override
+    public void setContentLength(int len) {
+        if (!rejected) {
+            super.setContentLength(len);
+        }
+    }
+
+    @Override
+    public void setContentLengthLong(long len) {
+        if (!rejected) {
+            super.setContentLengthLong(len);
+        }
+    }
+
+    @Override
+    public void flushBuffer() throws IOException {
+        if (!rejected) {
+            super.flushBuffer();
+        }
+    }
+
+    @Override
+    public void resetBuffer() {
+        if (!rejected) {
+            super.resetBuffer();
+        }
+    }
+
+    @Override
+    public void reset() {
+        if (!rejected) {
+            super.reset();
+        }
+    }
+
+    private static class DiscardingOutputStream extends ServletOutputStream {
+
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+            // discarding never blocks, so writing is possible right away
+            try {
+                writeListener.onWritePossible();
+            } catch (IOException e) {
+                writeListener.onError(e);
+            }
+        }
+    }
+}
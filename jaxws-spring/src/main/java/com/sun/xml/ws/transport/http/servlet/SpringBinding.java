@@ -35,9 +35,14 @@
  */
 package com.sun.xml.ws.transport.http.servlet;
 
+import com.revinate.ws.spring.SpringService;
+import com.revinate.ws.spring.startup.StartupPhase;
+import com.revinate.ws.spring.startup.StartupProfiler;
 import org.springframework.beans.factory.BeanNameAware;
 import com.sun.xml.ws.api.server.WSEndpoint;
 
+import javax.xml.ws.WebServiceException;
+
 /**
  * Represents the association between the service and URL.
  *
@@ -48,17 +53,54 @@ public class SpringBinding implements BeanNameAware {
     private String beanName;
     private String urlPattern;
     private WSEndpoint<?> endpoint;
+    private SpringService serviceFactory;
+    private boolean lazy;
 
     public void setBeanName(String name) {
         this.beanName = name;
     }
 
     public void create(ServletAdapterList owner) {
+        create(owner, null);
+    }
+
+    /**
+     * Creates the adapter of the service, and records the time it took
+     * in <code>profiler</code>, unless it is {@code null}.
+     *
+     * @return the created adapter
+     */
+    public ServletAdapter create(ServletAdapterList owner, StartupProfiler profiler) {
         String name = beanName;
         if (name == null) {
             name = urlPattern;
         }
-        owner.createAdapter(name, urlPattern, endpoint);
+        WSEndpoint<?> endpoint = getEndpoint();
+        long start = System.nanoTime();
+        ServletAdapter adapter = owner.createAdapter(name, urlPattern, endpoint);
+        if (profiler != null) {
+            String endpointName = profiler.getEndpointName(endpoint);
+            profiler.record(endpointName != null ? endpointName : name,
+                    StartupPhase.ADAPTER_REGISTRATION, System.nanoTime() - start);
+        }
+        return adapter;
+    }
+
+    /**
+     * Returns the endpoint of the service. If it is bound with
+     * {@link #setServiceFactory(SpringService)}, this is the current endpoint
+     * of the factory, created on first call.
+     */
+    WSEndpoint<?> getEndpoint() {
+        if (endpoint == null && serviceFactory != null) {
+            try {
+                // not kept, the factory replaces it when reloaded
+                return serviceFactory.getObject();
+            } catch (Exception e) {
+                throw new WebServiceException("Failed to create endpoint for " + urlPattern, e);
+            }
+        }
+        return endpoint;
     }
 
     /**
@@ -68,10 +110,52 @@ public class SpringBinding implements BeanNameAware {
         this.urlPattern = urlPattern;
     }
 
+    public String getUrl() {
+        return urlPattern;
+    }
+
     /**
      * The service to be bound to the specified URL.
      */
     public void setService(WSEndpoint<?> endpoint) {
         this.endpoint = endpoint;
     }
+
+    /**
+     * The {@link SpringService} creating the service to be bound to the
+     * specified URL. Unlike {@link #setService(WSEndpoint)}, the service is
+     * not created until the servlet is initialized, which lets a
+     * {@link com.revinate.ws.spring.ParallelEndpointInitializer} create all
+     * services in parallel beforehand.
+     */
+    public void setServiceFactory(SpringService serviceFactory) {
+        this.serviceFactory = serviceFactory;
+    }
+
+    public SpringService getServiceFactory() {
+        return serviceFactory;
+    }
+
+    /**
+     * Defers the creation of the service until it is first requested, or
+     * until the {@link WSSpringServlet} warms it up in the background after
+     * initialization. Use it for rarely called services, so that startup
+     * only pays for the others. Only applies to services bound with
+     * {@link #setServiceFactory(SpringService)}, which are also skipped by
+     * {@link com.revinate.ws.spring.ParallelEndpointInitializer}.
+     * Defaults to <code>false</code>.
+     *
+     * @see WSSpringServlet#setWarmUpDelay(long)
+     */
+    public void setLazy(boolean lazy) {
+        this.lazy = lazy;
+    }
+
+    /**
+     * Returns whether the creation of the service is deferred until it
+     * is first requested.
+     */
+    public boolean isLazy() {
+        return lazy && endpoint == null && serviceFactory != null;
+    }
 }
@@ -0,0 +1,631 @@
+package com.sun.xml.ws.transport.http.servlet;
+
+import com.revinate.ws.spring.SpringService;
+import com.revinate.ws.spring.startup.StartupProfiler;
+import com.sun.xml.ws.api.model.wsdl.WSDLPort;
+import com.sun.xml.ws.api.server.PortAddressResolver;
+import com.sun.xml.ws.api.server.WSEndpoint;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletContext;
+import javax.servlet.http.HttpServletRequest;
+import javax.xml.namespace.QName;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link WSServletDelegate} that finds the adapter serving a request in time
+ * proportional to the length of the path, whatever the number of adapters,
+ * creates the adapters of {@link SpringBinding#setLazy(boolean) lazy}
+ * bindings on first use, swaps in the adapters of reloaded endpoints, and
+ * counts the requests in progress on each adapter so that they can be
+ * drained.
+ *
+ * <p>
+ * {@link WSServletDelegate} looks up exact URL patterns in a map, but tries
+ * <tt>/*</tt> patterns one after the other. Here they are kept in a trie of
+ * the characters of their paths, built once, which is walked along the
+ * request path. Matching is the same as in {@link WSServletDelegate}:
+ * exact patterns come first, and when several <tt>/*</tt> patterns match,
+ * the first registered one wins.
+ *
+ * <p>
+ * A request {@link #enter(HttpServletRequest) entered} by the servlet is
+ * pinned to the adapter its route had then, which serves it even if the
+ * route is swapped in the meantime. The endpoint of swapped adapters is
+ * disposed once they have no request left.
+ */
+class SpringServletDelegate extends WSServletDelegate {
+
+    private static final Log logger = LogFactory.getLog(SpringServletDelegate.class);
+
+    /**
+     * Request attribute holding the {@link Target} a request is pinned to.
+     */
+    private static final String TARGET_ATTRIBUTE = SpringServletDelegate.class.getName() + ".target";
+
+    private final AdapterList owner;
+
+    private final List<Route> routes;
+
+    private final Map<String, Route> exactRoutes = new HashMap<>();
+
+    private final Node prefixRoutes = new Node();
+
+    /**
+     * Target of the requests matching no route.
+     */
+    private final Target unrouted = new Target(null);
+
+    /**
+     * Number of requests in progress, on all targets.
+     */
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private volatile boolean draining;
+
+    /**
+     * Whether the delegate has been destroyed, set while holding {@link #owner}.
+     */
+    private volatile boolean destroyed;
+
+    SpringServletDelegate(AdapterList owner, List<Route> routes, ServletContext context) {
+        super(owner, context);
+        this.owner = owner;
+        this.routes = routes;
+
+        // the delegate warns about ignored and duplicate patterns
+        int order = 0;
+        for (Route route : routes) {
+            String urlPattern = route.binding.getUrl();
+            if (urlPattern.contains("*.")) {
+                continue;
+            }
+            if (urlPattern.endsWith("/*")) {
+                prefixRoutes.add(urlPattern.substring(0, urlPattern.length() - 2), route, order++);
+            } else if (!exactRoutes.containsKey(urlPattern)) {
+                exactRoutes.put(urlPattern, route);
+            }
+        }
+    }
+
+    /**
+     * Creates the adapters of the bindings, except for lazy ones, and a
+     * delegate routing requests to them.
+     *
+     * @param profiler the profiler recording the creation times,
+     * or {@code null}
+     */
+    static SpringServletDelegate create(Collection<SpringBinding> bindings, StartupProfiler profiler,
+                                        ServletContext context) {
+        AdapterList owner = new AdapterList(context);
+        List<Route> routes = new ArrayList<>(bindings.size());
+        for (SpringBinding binding : bindings) {
+            routes.add(new Route(binding, binding.isLazy() ? null : new Target(binding.create(owner, profiler))));
+        }
+        return new SpringServletDelegate(owner, routes, context);
+    }
+
+    @Override
+    protected ServletAdapter getTarget(HttpServletRequest request) {
+        Object pinned = request.getAttribute(TARGET_ATTRIBUTE);
+        Target target = pinned instanceof Target ? (Target) pinned : findTarget(request);
+        return target != null ? target.adapter : null;
+    }
+
+    /**
+     * Returns the current target of the route of a request, or {@code null}
+     * if it matches no route.
+     */
+    private Target findTarget(HttpServletRequest request) {
+        Route route = findRoute(request.getRequestURI().substring(request.getContextPath().length()));
+        if (route == null) {
+            return null;
+        }
+        Target target = route.target;
+        return target != null ? target : createTarget(route);
+    }
+
+    /**
+     * Returns the route of a path within the context, or {@code null} if it
+     * matches none.
+     */
+    Route findRoute(String path) {
+        Route route = exactRoutes.get(path);
+        return route != null ? route : prefixRoutes.find(path);
+    }
+
+    /**
+     * Counts a request as in progress, and pins it to the current adapter
+     * of its route. Returns the target to {@link #exit(Target)} once the
+     * request completes, or {@code null} if the delegate is draining, in
+     * which case the request must be rejected.
+     */
+    Target enter(HttpServletRequest request) {
+        // counted before checking, so that drain() either waits for it or rejects it
+        inFlight.incrementAndGet();
+        if (draining) {
+            release();
+            return null;
+        }
+        Target target;
+        while (true) {
+            target = findTarget(request);
+            if (target == null) {
+                target = unrouted;
+            }
+            // counted before checking, so that the retirement either waits for it or is seen
+            target.inFlight.incrementAndGet();
+            Retirement retirement = target.retirement;
+            if (retirement == null) {
+                break;
+            }
+            // swapped in the meantime, route the request to the new target
+            if (target.inFlight.decrementAndGet() == 0) {
+                retirement.disposeIfIdle();
+            }
+        }
+        request.setAttribute(TARGET_ATTRIBUTE, target);
+        return target;
+    }
+
+    /**
+     * Counts a request returned by {@link #enter(HttpServletRequest)} as
+     * completed.
+     */
+    void exit(Target target) {
+        if (target.inFlight.decrementAndGet() == 0) {
+            Retirement retirement = target.retirement;
+            if (retirement != null) {
+                retirement.disposeIfIdle();
+            }
+        }
+        release();
+    }
+
+    private void release() {
+        if (inFlight.decrementAndGet() == 0 && draining) {
+            synchronized (inFlight) {
+                inFlight.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Rejects the requests entered from now on, and waits up to the given
+     * time in milliseconds for those in progress to complete. Returns
+     * whether they all did.
+     */
+    boolean drain(long timeout) throws InterruptedException {
+        draining = true;
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        synchronized (inFlight) {
+            while (inFlight.get() > 0) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    logInFlight();
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(inFlight, remaining);
+            }
+        }
+        return true;
+    }
+
+    private void logInFlight() {
+        StringBuilder message = new StringBuilder("Gave up draining ").append(inFlight.get())
+                .append(" requests in progress");
+        for (Route route : routes) {
+            Target target = route.target;
+            if (target != null && target.inFlight.get() > 0) {
+                message.append(", ").append(target.inFlight.get()).append(" on ").append(route.binding.getUrl());
+            }
+        }
+        logger.warn(message);
+    }
+
+    /**
+     * Creates the adapters of the lazy bindings that have not been
+     * requested yet, one after the other. Stops when the thread is
+     * interrupted.
+     */
+    void warmUp() {
+        for (Route route : routes) {
+            if (Thread.currentThread().isInterrupted()) {
+                return;
+            }
+            if (route.target == null) {
+                try {
+                    createTarget(route);
+                } catch (RuntimeException e) {
+                    logger.warn("Failed to warm up " + route.binding.getUrl(), e);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void destroy() {
+        synchronized (owner) {
+            destroyed = true;
+            super.destroy();
+        }
+    }
+
+    /**
+     * Routes the requests of the bindings of a service to adapters of a new
+     * endpoint of the service. Each route is swapped atomically; requests
+     * already routed to the previous adapters complete on them, after which
+     * the previous endpoint is disposed. Adapters of lazy bindings are left
+     * to be created on first use. Returns {@code false} if the delegate has
+     * been destroyed.
+     */
+    boolean replace(SpringService service, WSEndpoint<?> endpoint) {
+        List<Retirement> retirements = new ArrayList<>();
+        synchronized (owner) {
+            if (destroyed) {
+                return false;
+            }
+            for (Route route : routes) {
+                Target target = route.target;
+                if (target != null && route.binding.getServiceFactory() == service) {
+                    route.target = new Target(owner.replace(target.adapter, endpoint));
+                    retire(service, target, retirements);
+                }
+            }
+        }
+        for (Retirement retirement : retirements) {
+            // published once complete, as any of its targets may then dispose it
+            for (Target target : retirement.targets) {
+                target.retirement = retirement;
+            }
+            retirement.disposeIfIdle();
+        }
+        return true;
+    }
+
+    /**
+     * Adds a target swapped out of its route to the retirement of its
+     * endpoint, since several routes may share an endpoint.
+     */
+    private static void retire(SpringService service, Target target, List<Retirement> retirements) {
+        WSEndpoint<?> endpoint = target.adapter.getEndpoint();
+        Retirement retirement = null;
+        for (Retirement candidate : retirements) {
+            if (candidate.endpoint == endpoint) {
+                retirement = candidate;
+            }
+        }
+        if (retirement == null) {
+            retirement = new Retirement(service, endpoint);
+            retirements.add(retirement);
+        }
+        retirement.targets.add(target);
+    }
+
+    /**
+     * Creates the adapter of a lazy binding, unless another thread did it
+     * first. Returns {@code null} once the delegate has been destroyed.
+     *
+     * <p>
+     * The endpoint is created holding the lock of the route only, so that
+     * requests to other routes, and the creation of their endpoints, are
+     * not held up. Only the registration of the adapter holds {@link #owner}.
+     */
+    private Target createTarget(Route route) {
+        synchronized (route) {
+            if (route.target == null && !destroyed) {
+                long start = System.nanoTime();
+                // kept by the service, and reused by create()
+                route.binding.getEndpoint();
+                synchronized (owner) {
+                    if (!destroyed) {
+                        route.target = new Target(route.binding.create(owner, null));
+                    }
+                }
+                logger.info("Created lazy endpoint for " + route.binding.getUrl() + " in "
+                        + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+            }
+            return route.target;
+        }
+    }
+
+    /**
+     * {@link ServletAdapterList} that adapters of lazy bindings can be added
+     * to, and adapters of reloaded endpoints swapped in, while requests are
+     * served. {@link WSServletDelegate} and the endpoint index page read the
+     * adapters without locking, so they read a snapshot replaced on each
+     * change, and port addresses are resolved holding the lock adapters are
+     * changed with.
+     *
+     * <p>
+     * Adapters are not kept by {@link com.sun.xml.ws.transport.http.HttpAdapterList},
+     * which cannot remove them, so the ports are mapped to their paths here.
+     */
+    static final class AdapterList extends ServletAdapterList {
+
+        private volatile ServletAdapter[] snapshot = new ServletAdapter[0];
+
+        private final Map<PortKey, String> paths = new LinkedHashMap<>();
+
+        AdapterList(ServletContext context) {
+            super(context);
+        }
+
+        @Override
+        public synchronized ServletAdapter createAdapter(String name, String urlPattern, WSEndpoint<?> endpoint) {
+            ServletAdapter adapter = createHttpAdapter(name, urlPattern, endpoint);
+            WSDLPort port = endpoint.getPort();
+            if (port != null) {
+                String path = urlPattern.endsWith("/*") ? urlPattern.substring(0, urlPattern.length() - 2) : urlPattern;
+                paths.put(new PortKey(port.getOwner().getName(), port.getName().getLocalPart(),
+                        endpoint.getImplementationClass()), path);
+            }
+            ServletAdapter[] adapters = Arrays.copyOf(snapshot, snapshot.length + 1);
+            adapters[adapters.length - 1] = adapter;
+            snapshot = adapters;
+            return adapter;
+        }
+
+        /**
+         * Replaces an adapter with an adapter of the same name and pattern
+         * for another endpoint of the same port, and returns it.
+         */
+        synchronized ServletAdapter replace(ServletAdapter previous, WSEndpoint<?> endpoint) {
+            ServletAdapter adapter = createHttpAdapter(previous.name, previous.urlPattern, endpoint);
+            ServletAdapter[] adapters = snapshot.clone();
+            for (int i = 0; i < adapters.length; i++) {
+                if (adapters[i] == previous) {
+                    adapters[i] = adapter;
+                }
+            }
+            snapshot = adapters;
+            return adapter;
+        }
+
+        @Override
+        public ServletAdapter get(int index) {
+            return snapshot[index];
+        }
+
+        @Override
+        public int size() {
+            return snapshot.length;
+        }
+
+        @Override
+        public Iterator<ServletAdapter> iterator() {
+            return Collections.unmodifiableList(Arrays.asList(snapshot)).iterator();
+        }
+
+        @Override
+        public PortAddressResolver createPortAddressResolver(final String baseAddress, final Class<?> endpointImpl) {
+            return new PortAddressResolver() {
+                @Override
+                public String getAddressFor(QName serviceName, String portName) {
+                    String path = getPath(serviceName, portName, endpointImpl);
+                    return path != null ? baseAddress + path : null;
+                }
+            };
+        }
+
+        /**
+         * Returns the path of a port of the given implementation class or,
+         * failing that, of any implementation class.
+         */
+        private synchronized String getPath(QName serviceName, String portName, Class<?> endpointImpl) {
+            String path = paths.get(new PortKey(serviceName, portName, endpointImpl));
+            if (path == null) {
+                for (Map.Entry<PortKey, String> entry : paths.entrySet()) {
+                    if (entry.getKey().serviceName.equals(serviceName) && entry.getKey().portName.equals(portName)) {
+                        return entry.getValue();
+                    }
+                }
+            }
+            return path;
+        }
+    }
+
+    /**
+     * Port of an endpoint implementation class.
+     */
+    private static final class PortKey {
+
+        final QName serviceName;
+
+        final String portName;
+
+        final Class<?> implementationClass;
+
+        PortKey(QName serviceName, String portName, Class<?> implementationClass) {
+            this.serviceName = serviceName;
+            this.portName = portName;
+            this.implementationClass = implementationClass;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof PortKey)) {
+                return false;
+            }
+            PortKey other = (PortKey) o;
+            return serviceName.equals(other.serviceName) && portName.equals(other.portName)
+                    && implementationClass == other.implementationClass;
+        }
+
+        @Override
+        public int hashCode() {
+            return (serviceName.hashCode() * 31 + portName.hashCode()) * 31 + implementationClass.hashCode();
+        }
+    }
+
+    /**
+     * Binding, with its current target once created.
+     */
+    static final class Route {
+
+        final SpringBinding binding;
+
+        volatile Target target;
+
+        Route(SpringBinding binding, Target target) {
+            this.binding = binding;
+            this.target = target;
+        }
+    }
+
+    /**
+     * Adapter, with the number of requests in progress on it.
+     */
+    static final class Target {
+
+        final ServletAdapter adapter;
+
+        final AtomicInteger inFlight = new AtomicInteger();
+
+        /**
+         * Set once the target has been swapped out of its route.
+         */
+        volatile Retirement retirement;
+
+        Target(ServletAdapter adapter) {
+            this.adapter = adapter;
+        }
+    }
+
+    /**
+     * Endpoint swapped out of its routes, disposed once the targets that
+     * were using it have no request left.
+     */
+    private static final class Retirement {
+
+        final SpringService service;
+
+        final WSEndpoint<?> endpoint;
+
+        final List<Target> targets = new ArrayList<>(1);
+
+        private final AtomicBoolean disposed = new AtomicBoolean();
+
+        Retirement(SpringService service, WSEndpoint<?> endpoint) {
+            this.service = service;
+            this.endpoint = endpoint;
+        }
+
+        void disposeIfIdle() {
+            for (Target target : targets) {
+                if (target.inFlight.get() > 0) {
+                    return;
+                }
+            }
+            if (disposed.compareAndSet(false, true)) {
+                try {
+                    service.disposeReplaced(endpoint);
+                } catch (RuntimeException e) {
+                    logger.warn("Failed to dispose replaced endpoint " + endpoint.getPortName(), e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Exits an entered request once its asynchronous processing completes.
+     */
+    static class AsyncExit implements AsyncListener {
+
+        private final SpringServletDelegate delegate;
+
+        private final Target target;
+
+        AsyncExit(SpringServletDelegate delegate, Target target) {
+            this.delegate = delegate;
+            this.target = target;
+        }
+
+        public void onComplete(AsyncEvent event) {
+            delegate.exit(target);
+        }
+
+        public void onTimeout(AsyncEvent event) {}
+
+        public void onError(AsyncEvent event) {}
+
+        public void onStartAsync(AsyncEvent event) {
+            // the request is still in progress
+            event.getAsyncContext().addListener(this);
+        }
+    }
+
+    /**
+     * Node of the trie of <tt>/*</tt> patterns, holding the route whose
+     * path ends there, if any.
+     */
+    private static final class Node {
+
+        private Map<Character, Node> children;
+
+        private Route route;
+
+        /**
+         * Registration order of the route.
+         */
+        private int order;
+
+        void add(String path, Route route, int order) {
+            Node node = this;
+            for (int i = 0; i < path.length(); i++) {
+                if (node.children == null) {
+                    node.children = new HashMap<>(4);
+                }
+                Character c = path.charAt(i);
+                Node child = node.children.get(c);
+                if (child == null) {
+                    child = new Node();
+                    node.children.put(c, child);
+                }
+                node = child;
+            }
+            if (node.route == null) {
+                node.route = route;
+                node.order = order;
+            }
+        }
+
+        /**
+         * Returns the first registered route whose path is the given path,
+         * or a prefix of it followed by <tt>/</tt> or <tt>?</tt>.
+         */
+        Route find(String path) {
+            Route result = null;
+            int resultOrder = Integer.MAX_VALUE;
+            Node node = this;
+            for (int i = 0; ; i++) {
+                if (node.route != null && node.order < resultOrder
+                        && (i == path.length() || path.charAt(i) == '/' || path.charAt(i) == '?')) {
+                    result = node.route;
+                    resultOrder = node.order;
+                }
+                if (i == path.length() || node.children == null) {
+                    return result;
+                }
+                node = node.children.get(path.charAt(i));
+                if (node == null) {
+                    return result;
+                }
+            }
+        }
+    }
+}
@@ -35,19 +35,31 @@
  */
 package com.sun.xml.ws.transport.http.servlet;
 
+import com.revinate.ws.spring.BufferPool;
+import com.revinate.ws.spring.startup.StartupProfiler;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.ApplicationContextAware;
 import org.springframework.context.ConfigurableApplicationContext;
 import org.springframework.web.context.WebApplicationContext;
 import org.springframework.web.context.support.WebApplicationContextUtils;
 
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
 import javax.servlet.ServletConfig;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.HashMap;
 import java.util.LinkedHashSet;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
 
 /**
  * {@link HttpServlet} that uses Spring to obtain a configured server set up,
@@ -64,12 +76,121 @@ public class WSSpringServlet extends HttpServlet implements ApplicationContextAw
 
     private static final long serialVersionUID = -2786173009814679145L;
 
-    private WSServletDelegate delegate;
+    private SpringServletDelegate delegate;
 
     private WebApplicationContext webApplicationContext;
 
     private boolean webApplicationContextInjected = false;
 
+    /**
+     * Executor that processes SOAP requests in asynchronous mode.
+     *
+     * @see #setAsyncExecutor(Executor)
+     */
+    private Executor asyncExecutor;
+
+    /**
+     * Timeout, in milliseconds, of asynchronously processed requests.
+     *
+     * @see #setAsyncTimeout(long)
+     */
+    private long asyncTimeout = 0;
+
+    /**
+     * @see #setConcurrencyLimit(int)
+     */
+    private int concurrencyLimit;
+
+    /**
+     * @see #setMinConcurrencyLimit(int)
+     */
+    private int minConcurrencyLimit = 1;
+
+    /**
+     * @see #setMaxConcurrencyLimit(int)
+     */
+    private int maxConcurrencyLimit = 1000;
+
+    /**
+     * @see #setLatencyTolerance(double)
+     */
+    private double latencyTolerance = 2.0;
+
+    /**
+     * @see #setRetryAfter(int)
+     */
+    private int retryAfter = 1;
+
+    /**
+     * Concurrency limiters by URL pattern, or {@code null} if disabled.
+     * Not modified after initialization.
+     */
+    private Map<String, ConcurrencyLimiter> concurrencyLimiters;
+
+    /**
+     * @see #setWarmUpDelay(long)
+     */
+    private long warmUpDelay = 0;
+
+    private Thread warmUpThread;
+
+    /**
+     * @see #setMetadataReloadDelay(long)
+     */
+    private long metadataReloadDelay = -1;
+
+    private MetadataWatcher metadataWatcher;
+
+    /**
+     * @see #setDrainTimeout(long)
+     */
+    private long drainTimeout = 10000;
+
+    /**
+     * Minimum size in bytes of compressed responses, or <code>-1</code>
+     * if responses are not compressed.
+     *
+     * @see #setCompressionThreshold(int)
+     */
+    private int compressionThreshold = -1;
+
+    /**
+     * @see #setCompressionLevel(int)
+     */
+    private int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+
+    /**
+     * @see #setRequestDecompression(boolean)
+     */
+    private boolean requestDecompression;
+
+    /**
+     * @see #setMaxDecompressedRequestSize(long)
+     */
+    private long maxDecompressedRequestSize = 10 * 1024 * 1024;
+
+    /**
+     * @see #setCompressionBufferSize(int)
+     */
+    private int compressionBufferSize = 8192;
+
+    /**
+     * @see #setBufferPool(BufferPool)
+     */
+    private BufferPool bufferPool = new BufferPool();
+
+    /**
+     * Maximum number of cached metadata documents.
+     *
+     * @see #setMetadataCacheSize(int)
+     */
+    private int metadataCacheSize = 256;
+
+    /**
+     * Cache of the WSDL and schema documents, or {@code null} if disabled.
+     */
+    private MetadataResponseCache metadataCache;
+
     public WSSpringServlet() {}
 
     public WSSpringServlet(WebApplicationContext webApplicationContext) {
@@ -96,11 +217,325 @@ public class WSSpringServlet extends HttpServlet implements ApplicationContextAw
         bindings.addAll(this.webApplicationContext.getBeansOfType(SpringBinding.class).values());
 
         // create adapters
-        ServletAdapterList l = new ServletAdapterList(getServletContext());
-        for (SpringBinding binding : bindings)
-            binding.create(l);
+        StartupProfiler startupProfiler = getStartupProfiler();
+        delegate = SpringServletDelegate.create(bindings, startupProfiler, getServletContext());
+
+        if (concurrencyLimit > 0) {
+            Map<String, ConcurrencyLimiter> limiters = new HashMap<>();
+            for (SpringBinding binding : bindings) {
+                limiters.put(binding.getUrl(), new ConcurrencyLimiter(concurrencyLimit,
+                        minConcurrencyLimit, maxConcurrencyLimit, latencyTolerance));
+            }
+            concurrencyLimiters = limiters;
+        }
+
+        if (metadataCacheSize > 0) {
+            metadataCache = new MetadataResponseCache(metadataCacheSize);
+        }
+
+        if (metadataReloadDelay >= 0) {
+            try {
+                metadataWatcher = MetadataWatcher.start(delegate, bindings, metadataReloadDelay);
+            } catch (IOException e) {
+                throw new ServletException("Failed to watch metadata files", e);
+            }
+        }
+
+        if (startupProfiler != null) {
+            startupProfiler.publishReport();
+        }
 
-        delegate = new WSServletDelegate(l,getServletContext());
+        if (warmUpDelay >= 0) {
+            for (SpringBinding binding : bindings) {
+                if (binding.isLazy()) {
+                    startWarmUp();
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Starts a low priority thread creating the endpoints of lazy bindings
+     * after {@link #warmUpDelay}.
+     */
+    private void startWarmUp() {
+        final SpringServletDelegate delegate = this.delegate;
+        warmUpThread = new Thread("jaxws-spring-warm-up") {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(warmUpDelay);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                delegate.warmUp();
+            }
+        };
+        warmUpThread.setDaemon(true);
+        warmUpThread.setPriority(Thread.MIN_PRIORITY);
+        warmUpThread.setContextClassLoader(Thread.currentThread().getContextClassLoader());
+        warmUpThread.start();
+    }
+
+    /**
+     * Returns the {@link StartupProfiler} declared in the application
+     * context, or {@code null} if there is none.
+     */
+    private StartupProfiler getStartupProfiler() {
+        Map<String, StartupProfiler> profilers = this.webApplicationContext.getBeansOfType(StartupProfiler.class);
+        return profilers.isEmpty() ? null : profilers.values().iterator().next();
+    }
+
+    /**
+     * Enables asynchronous processing of SOAP requests.
+     *
+     * <p>
+     * When set, each POST request is put into asynchronous mode with
+     * {@link HttpServletRequest#startAsync()} and the exchange is handed to
+     * this executor, which runs the endpoint and completes the response.
+     * The container thread is released as soon as the exchange is queued,
+     * so a small container pool can serve many slow in-flight requests.
+     *
+     * <p>
+     * Requires a Servlet 3.0+ container and a servlet registration that
+     * supports asynchronous requests; otherwise requests are processed on
+     * the container thread as usual. Requests rejected by the executor
+     * are answered with <tt>503 Service Unavailable</tt>.
+     * Defaults to {@code null}, which disables asynchronous mode.
+     */
+    public void setAsyncExecutor(Executor asyncExecutor) {
+        this.asyncExecutor = asyncExecutor;
+    }
+
+    /**
+     * Sets the timeout, in milliseconds, of asynchronously processed requests.
+     * Defaults to {@code 0}, in which case requests never time out, just
+     * like requests processed on the container thread.
+     *
+     * <p>
+     * Requests still waiting for the executor when they time out are answered
+     * with <tt>503 Service Unavailable</tt>, and requests still processed by
+     * the endpoint with <tt>504 Gateway Timeout</tt>; the endpoint keeps
+     * processing them, but its response is dropped.
+     *
+     * @see #setAsyncExecutor(Executor)
+     */
+    public void setAsyncTimeout(long asyncTimeout) {
+        this.asyncTimeout = asyncTimeout;
+    }
+
+    /**
+     * Sets the delay, in milliseconds, between initialization and the
+     * creation of the endpoints of {@link SpringBinding#setLazy(boolean) lazy}
+     * bindings that have not been requested yet. They are created one after
+     * the other by a low priority background thread, so that their first
+     * requests do not pay for it.
+     * Defaults to <code>0</code>. A negative delay disables warm-up, and the
+     * endpoints are only created when first requested.
+     */
+    public void setWarmUpDelay(long warmUpDelay) {
+        this.warmUpDelay = warmUpDelay;
+    }
+
+    /**
+     * Sets the maximum time, in milliseconds, {@link #destroy()} waits for
+     * the requests in progress to complete before tearing the endpoints
+     * down. Requests received once destruction has started are rejected
+     * with <tt>503 Service Unavailable</tt>, a <tt>Retry-After</tt> header
+     * and <tt>Connection: close</tt>, so that clients and load balancers
+     * retry them on another instance. Requests still in progress after the
+     * timeout are logged, and may fail.
+     * Defaults to <code>10000</code>; <code>0</code> rejects new requests
+     * without waiting.
+     *
+     * @see #setRetryAfter(int)
+     */
+    public void setDrainTimeout(long drainTimeout) {
+        this.drainTimeout = drainTimeout;
+    }
+
+    /**
+     * Enables hot reload of the endpoints whose WSDL or schema files change.
+     *
+     * <p>
+     * The files of the {@link com.revinate.ws.spring.SpringService}s bound
+     * with {@link SpringBinding#setServiceFactory} are watched, when they are
+     * read from the file system rather than from a jar, as in exploded
+     * deployments. Once a file has changed, and no other for the given delay
+     * in milliseconds, the endpoints reading it are created again in the
+     * background and atomically swapped in, without a restart. Requests in
+     * progress complete on the previous endpoints, which are then disposed.
+     * If an endpoint cannot be created, the failure is logged and the
+     * previous endpoint is kept. Documents added after startup are not
+     * picked up, and services with an externally configured binding are
+     * not reloaded.
+     *
+     * <p>
+     * A new endpoint reuses the bean of its service, if it is set with
+     * {@link com.revinate.ws.spring.SpringService#setBean(Object)}, without
+     * starting it again: its <code>@Resource</code> fields are injected and
+     * its <code>@PostConstruct</code> method called only by the first
+     * endpoint, and its <code>@PreDestroy</code> method at shutdown.
+     * Defaults to <code>-1</code>, which disables reloading.
+     *
+     * @see com.revinate.ws.spring.SpringService#reload()
+     */
+    public void setMetadataReloadDelay(long metadataReloadDelay) {
+        this.metadataReloadDelay = metadataReloadDelay;
+    }
+
+    /**
+     * Enables adaptive concurrency limiting, starting with the given limit.
+     *
+     * <p>
+     * The number of SOAP requests processed concurrently is limited for each
+     * {@link SpringBinding} URL. The limit is adjusted continuously: it grows
+     * while processing times stay close to those of the unloaded endpoint,
+     * and shrinks when they exceed them by more than the
+     * {@link #setLatencyTolerance(double) latency tolerance}. Requests over
+     * the limit are rejected right away with <tt>503 Service Unavailable</tt>
+     * and a <tt>Retry-After</tt> header, instead of queueing up, which keeps
+     * latency bounded under overload.
+     * Defaults to <code>0</code>, which disables limiting.
+     */
+    public void setConcurrencyLimit(int concurrencyLimit) {
+        this.concurrencyLimit = concurrencyLimit;
+    }
+
+    /**
+     * Sets the lowest concurrency limit. Defaults to <code>1</code>.
+     *
+     * @see #setConcurrencyLimit(int)
+     */
+    public void setMinConcurrencyLimit(int minConcurrencyLimit) {
+        this.minConcurrencyLimit = minConcurrencyLimit;
+    }
+
+    /**
+     * Sets the highest concurrency limit. Defaults to <code>1000</code>.
+     *
+     * @see #setConcurrencyLimit(int)
+     */
+    public void setMaxConcurrencyLimit(int maxConcurrencyLimit) {
+        this.maxConcurrencyLimit = maxConcurrencyLimit;
+    }
+
+    /**
+     * Sets how many times longer than on the unloaded endpoint a request
+     * can take before the concurrency limit is lowered. The unloaded
+     * processing time is the minimum measured over recent requests.
+     * Defaults to <code>2.0</code>.
+     *
+     * @see #setConcurrencyLimit(int)
+     */
+    public void setLatencyTolerance(double latencyTolerance) {
+        this.latencyTolerance = latencyTolerance;
+    }
+
+    /**
+     * Sets the <tt>Retry-After</tt> value, in seconds, of requests rejected
+     * by the concurrency limit, or while draining.
+     * Defaults to <code>1</code>.
+     *
+     * @see #setConcurrencyLimit(int)
+     * @see #setDrainTimeout(long)
+     */
+    public void setRetryAfter(int retryAfter) {
+        this.retryAfter = retryAfter;
+    }
+
+    /**
+     * Sets the maximum number of WSDL and schema documents kept in memory.
+     *
+     * <p>
+     * <tt>?wsdl</tt> and <tt>?xsd=N</tt> requests are served from a cache
+     * keyed by base address, path and query, instead of generating and
+     * address-patching the document each time. Documents are kept along
+     * with a gzip-compressed copy, sent to clients accepting it, and an
+     * <tt>ETag</tt>, so that clients can poll them with
+     * <tt>If-None-Match</tt> and get <tt>304 Not Modified</tt> responses.
+     * Entries are dropped when the endpoint serving the path changes.
+     * Defaults to <code>256</code>; <code>0</code> disables the cache.
+     */
+    public void setMetadataCacheSize(int metadataCacheSize) {
+        this.metadataCacheSize = metadataCacheSize;
+    }
+
+    /**
+     * Enables compression of SOAP responses larger than the given size in
+     * bytes, with gzip or deflate depending on the <tt>Accept-Encoding</tt>
+     * header of the request.
+     *
+     * <p>
+     * Responses are compressed as they are written: only up to
+     * <code>compressionThreshold</code> bytes are held back to decide whether
+     * to compress.
+     * Defaults to <code>-1</code>, which disables compression of responses.
+     */
+    public void setCompressionThreshold(int compressionThreshold) {
+        this.compressionThreshold = compressionThreshold;
+    }
+
+    /**
+     * Sets the compression level of responses, from <code>1</code> (fastest)
+     * to <code>9</code> (smallest).
+     * Defaults to {@link Deflater#DEFAULT_COMPRESSION}.
+     *
+     * @see #setCompressionThreshold(int)
+     */
+    public void setCompressionLevel(int compressionLevel) {
+        this.compressionLevel = compressionLevel;
+    }
+
+    /**
+     * Enables decompression of SOAP requests whose body is compressed with
+     * gzip or deflate, as indicated by their <tt>Content-Encoding</tt>
+     * header. Bodies are decompressed as they are read, up to
+     * {@link #setMaxDecompressedRequestSize(long) a maximum size}.
+     * Defaults to <code>false</code>, in which case such requests are passed
+     * to JAX-WS as they are, and usually rejected.
+     */
+    public void setRequestDecompression(boolean requestDecompression) {
+        this.requestDecompression = requestDecompression;
+    }
+
+    /**
+     * Sets the maximum size in bytes of decompressed request bodies. Requests
+     * inflating to more than that are answered with
+     * <tt>413 Request Entity Too Large</tt>.
+     * Defaults to 10 MB; <code>-1</code> removes the limit.
+     *
+     * @see #setRequestDecompression(boolean)
+     */
+    public void setMaxDecompressedRequestSize(long maxDecompressedRequestSize) {
+        this.maxDecompressedRequestSize = maxDecompressedRequestSize;
+    }
+
+    /**
+     * Sets the size in bytes of the buffers holding compressed data, when
+     * compressing responses and decompressing requests.
+     * Defaults to <code>8192</code>.
+     */
+    public void setCompressionBufferSize(int compressionBufferSize) {
+        this.compressionBufferSize = compressionBufferSize;
+    }
+
+    /**
+     * Sets the pool of the buffers holding compressed data, and responses
+     * held back until they are known to be worth compressing, which may be
+     * shared with other servlets. Defaults to a {@link BufferPool} with
+     * default settings, created for this servlet.
+     */
+    public void setBufferPool(BufferPool bufferPool) {
+        this.bufferPool = bufferPool;
+    }
+
+    /**
+     * Returns the pool of buffers, whose statistics help sizing it.
+     */
+    public BufferPool getBufferPool() {
+        return bufferPool;
     }
 
     protected WebApplicationContext initWebApplicationContext() {
@@ -113,27 +548,176 @@ public class WSSpringServlet extends HttpServlet implements ApplicationContextAw
 
     /**
      * destroys the servlet and releases all associated resources,
-     * such as the Spring application context and the JAX-WS delegate.
+     * such as the Spring application context and the JAX-WS delegate,
+     * once the requests in progress have been drained.
      */
     @Override
     public void destroy() {
+        try {
+            delegate.drain(drainTimeout);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
         if (this.webApplicationContext instanceof ConfigurableApplicationContext
                 && !this.webApplicationContextInjected) {
             ((ConfigurableApplicationContext) this.webApplicationContext).close();
         }
+        if (warmUpThread != null) {
+            warmUpThread.interrupt();
+            warmUpThread = null;
+        }
+        if (metadataWatcher != null) {
+            metadataWatcher.stop();
+            metadataWatcher = null;
+        }
+        if (metadataCache != null) {
+            metadataCache.clear();
+        }
         delegate.destroy();
         delegate = null;
     }
 
+    /**
+     * Counts the request as in progress until it completes, or rejects it
+     * if the servlet is being destroyed.
+     */
+    @Override
+    protected void service(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        SpringServletDelegate delegate = this.delegate;
+        SpringServletDelegate.Target target = delegate != null ? delegate.enter(request) : null;
+        if (target == null) {
+            response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            response.setHeader("Retry-After", Integer.toString(retryAfter));
+            response.setHeader("Connection", "close");
+            return;
+        }
+
+        AsyncListeningRequestWrapper listening = new AsyncListeningRequestWrapper(request);
+        listening.addAsyncListener(new SpringServletDelegate.AsyncExit(delegate, target));
+        try {
+            super.service(listening, response);
+        } finally {
+            if (!listening.isAsyncRegistered()) {
+                delegate.exit(target);
+            }
+        }
+    }
+
     @Override
     protected void doPost(HttpServletRequest request, HttpServletResponse response)
-            throws ServletException {
-        delegate.doPost(request,response,getServletContext());
+            throws ServletException, IOException {
+        ConcurrencyLimiter limiter = getConcurrencyLimiter(request);
+        if (limiter == null) {
+            processPost(request, response);
+            return;
+        }
+
+        if (!limiter.tryAcquire()) {
+            response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            response.setHeader("Retry-After", Integer.toString(retryAfter));
+            return;
+        }
+        long start = System.nanoTime();
+        AsyncListeningRequestWrapper listening = new AsyncListeningRequestWrapper(request);
+        listening.addAsyncListener(new ConcurrencyLimiter.AsyncRelease(limiter, start));
+        try {
+            processPost(listening, response);
+        } finally {
+            if (!listening.isAsyncRegistered()) {
+                limiter.release(System.nanoTime() - start, false);
+            }
+        }
+    }
+
+    /**
+     * Returns the concurrency limiter of the adapter serving the request,
+     * or {@code null} if there is none.
+     */
+    private ConcurrencyLimiter getConcurrencyLimiter(HttpServletRequest request) {
+        if (concurrencyLimiters == null) {
+            return null;
+        }
+        ServletAdapter target = delegate.getTarget(request);
+        return target != null ? concurrencyLimiters.get(target.urlPattern) : null;
+    }
+
+    private void processPost(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        HttpServletResponse containerResponse = response;
+        String requestCoding = requestDecompression ? ContentEncodings.getRequestCoding(request) : null;
+        if (requestCoding != null) {
+            RejectingResponseWrapper rejecting = new RejectingResponseWrapper(response);
+            request = new DecompressingRequestWrapper(request, requestCoding, maxDecompressedRequestSize,
+                    rejecting, compressionBufferSize, bufferPool);
+            response = rejecting;
+        }
+        if (compressionThreshold >= 0) {
+            String responseCoding = ContentEncodings.negotiate(request);
+            if (responseCoding != null) {
+                response = new CompressingResponseWrapper(response, responseCoding,
+                        compressionThreshold, compressionLevel, compressionBufferSize, bufferPool);
+            }
+        }
+
+        if (asyncExecutor != null && request.isAsyncSupported()) {
+            dispatchAsync(request, response, containerResponse);
+        } else {
+            delegate.doPost(request,response,getServletContext());
+            if (!request.isAsyncStarted()) {
+                finish(request, response);
+            }
+        }
+    }
+
+    /**
+     * Sends what the wrappers applied by {@link #doPost} still hold back,
+     * and releases their buffers.
+     */
+    private static void finish(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (response instanceof CompressingResponseWrapper) {
+            ((CompressingResponseWrapper) response).finish();
+        }
+        if (request instanceof DecompressingRequestWrapper) {
+            ((DecompressingRequestWrapper) request).finish();
+        }
+    }
+
+    /**
+     * Puts the request into asynchronous mode and hands it to the
+     * {@link #asyncExecutor}.
+     *
+     * @param containerResponse the response before it was wrapped, used to
+     * answer requests timing out
+     */
+    private void dispatchAsync(HttpServletRequest request, HttpServletResponse response,
+                               HttpServletResponse containerResponse) {
+        AsyncContext asyncContext = request.startAsync(request, response);
+        asyncContext.setTimeout(asyncTimeout);
+        AsyncExchange exchange = new AsyncExchange(asyncContext, containerResponse, delegate);
+        asyncContext.addListener(exchange);
+        try {
+            asyncExecutor.execute(exchange);
+        } catch (RejectedExecutionException e) {
+            response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            asyncContext.complete();
+        }
     }
 
     @Override
     protected void doGet(HttpServletRequest request, HttpServletResponse response)
             throws ServletException {
+        if (metadataCache != null && MetadataResponseCache.isMetadataQuery(request.getQueryString())) {
+            ServletAdapter target = delegate.getTarget(request);
+            if (target != null) {
+                try {
+                    metadataCache.doGet(request, response, getServletContext(), delegate, target);
+                } catch (IOException e) {
+                    throw new ServletException(e);
+                }
+                return;
+            }
+        }
         delegate.doGet(request,response,getServletContext());
     }
 
@@ -154,4 +738,99 @@ public class WSSpringServlet extends HttpServlet implements ApplicationContextAw
             throws ServletException {
         delegate.doHead(request,response,getServletContext());
     }
+
+    /**
+     * Processes an asynchronous request on an {@link #asyncExecutor} thread
+     * and completes it afterwards.
+     *
+     * <p>
+     * The exchange also listens to the request, and completes it itself when
+     * it times out: with <tt>503 Service Unavailable</tt> if the executor did
+     * not get to it, or <tt>504 Gateway Timeout</tt> if the endpoint is still
+     * processing it. From then on, the container may recycle the request and
+     * response, so the exchange leaves them alone.
+     */
+    private class AsyncExchange implements Runnable, AsyncListener {
+
+        private static final int PENDING = 0;
+
+        private static final int RUNNING = 1;
+
+        private static final int COMPLETING = 2;
+
+        /**
+         * Timed out or failed, and completed by the container or the listener.
+         */
+        private static final int ABANDONED = 3;
+
+        private final AsyncContext asyncContext;
+
+        private final HttpServletResponse containerResponse;
+
+        private final WSServletDelegate delegate;
+
+        private final AtomicInteger state = new AtomicInteger(PENDING);
+
+        AsyncExchange(AsyncContext asyncContext, HttpServletResponse containerResponse,
+                      WSServletDelegate delegate) {
+            this.asyncContext = asyncContext;
+            this.containerResponse = containerResponse;
+            this.delegate = delegate;
+        }
+
+        public void run() {
+            if (!state.compareAndSet(PENDING, RUNNING)) {
+                return;
+            }
+            HttpServletRequest request = (HttpServletRequest) asyncContext.getRequest();
+            HttpServletResponse response = (HttpServletResponse) asyncContext.getResponse();
+            try {
+                delegate.doPost(request, response, getServletContext());
+                if (state.compareAndSet(RUNNING, COMPLETING)) {
+                    finish(request, response);
+                }
+            } catch (ServletException | IOException | RuntimeException e) {
+                // failing in finish() leaves the exchange completing
+                if (state.compareAndSet(RUNNING, COMPLETING) || state.get() == COMPLETING) {
+                    log("Failed to process asynchronous request", e);
+                    if (!response.isCommitted()) {
+                        response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+                    }
+                }
+            } finally {
+                if (state.get() == COMPLETING) {
+                    asyncContext.complete();
+                }
+            }
+        }
+
+        public void onTimeout(AsyncEvent event) throws IOException {
+            int status;
+            if (state.compareAndSet(PENDING, ABANDONED)) {
+                status = HttpServletResponse.SC_SERVICE_UNAVAILABLE;
+            } else if (state.compareAndSet(RUNNING, ABANDONED)) {
+                status = HttpServletResponse.SC_GATEWAY_TIMEOUT;
+            } else {
+                // the exchange is completing the request
+                return;
+            }
+            if (!containerResponse.isCommitted()) {
+                containerResponse.reset();
+                containerResponse.setStatus(status);
+                if (status == HttpServletResponse.SC_SERVICE_UNAVAILABLE) {
+                    containerResponse.setHeader("Retry-After", Integer.toString(retryAfter));
+                }
+            }
+            asyncContext.complete();
+        }
+
+        public void onError(AsyncEvent event) {
+            // completed by the container
+            state.set(ABANDONED);
+        }
+
+        public void onComplete(AsyncEvent event) {}
+
+        public void onStartAsync(AsyncEvent event) {}
+    }
 }
@@ -0,0 +1,143 @@
+package com.sun.xml.ws.transport.http.servlet;
+
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ConcurrencyLimiterTest {
+
+    private static final long LATENCY = 1000000;
+
+    @Test
+    public void rejectsRequestsOverLimit() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(2, 1, 10, 2);
+
+        assertTrue(limiter.tryAcquire());
+        assertTrue(limiter.tryAcquire());
+        assertFalse(limiter.tryAcquire());
+
+        limiter.release(LATENCY, false);
+        assertTrue(limiter.tryAcquire());
+    }
+
+    @Test
+    public void initialLimitIsClamped() {
+        assertEquals(2, new ConcurrencyLimiter(1, 2, 10, 2).getLimit());
+        assertEquals(10, new ConcurrencyLimiter(20, 2, 10, 2).getLimit());
+    }
+
+    @Test
+    public void growsWhileHalfOfLimitIsInUse() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(2, 1, 10, 2);
+
+        // each round adds 1/limit once, with both requests in flight
+        for (int i = 0; i < 3; i++) {
+            assertTrue(limiter.tryAcquire());
+            assertTrue(limiter.tryAcquire());
+            limiter.release(LATENCY, false);
+            limiter.release(LATENCY, false);
+        }
+        assertEquals(3, limiter.getLimit());
+    }
+
+    @Test
+    public void doesNotGrowWhenUnderused() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(4, 1, 10, 2);
+
+        for (int i = 0; i < 100; i++) {
+            assertTrue(limiter.tryAcquire());
+            limiter.release(LATENCY, false);
+        }
+        assertEquals(4, limiter.getLimit());
+    }
+
+    @Test
+    public void doesNotGrowOverMaximum() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(2, 1, 2, 2);
+
+        for (int i = 0; i < 10; i++) {
+            assertTrue(limiter.tryAcquire());
+            assertTrue(limiter.tryAcquire());
+            limiter.release(LATENCY, false);
+            limiter.release(LATENCY, false);
+        }
+        assertEquals(2, limiter.getLimit());
+    }
+
+    @Test
+    public void shrinksOnTimeout() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(10, 1, 10, 2);
+
+        assertTrue(limiter.tryAcquire());
+        limiter.release(LATENCY, true);
+        assertEquals((int) (10 * ConcurrencyLimiter.BACKOFF_RATIO), limiter.getLimit());
+    }
+
+    @Test
+    public void shrinksWhenLatencyExceedsTolerance() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(10, 1, 10, 2);
+
+        assertTrue(limiter.tryAcquire());
+        limiter.release(LATENCY, false);
+        assertEquals(10, limiter.getLimit());
+
+        // within tolerance of the fastest request
+        assertTrue(limiter.tryAcquire());
+        limiter.release(2 * LATENCY, false);
+        assertEquals(10, limiter.getLimit());
+
+        assertTrue(limiter.tryAcquire());
+        limiter.release(3 * LATENCY, false);
+        assertEquals(9, limiter.getLimit());
+    }
+
+    @Test
+    public void doesNotShrinkUnderMinimum() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(2, 2, 10, 2);
+
+        for (int i = 0; i < 10; i++) {
+            assertTrue(limiter.tryAcquire());
+            limiter.release(LATENCY, true);
+        }
+        assertEquals(2, limiter.getLimit());
+    }
+
+    @Test
+    public void asyncReleaseReleasesOnCompletion() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 1, 10, 2);
+        assertTrue(limiter.tryAcquire());
+
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setAsyncSupported(true);
+        AsyncListeningRequestWrapper listening = new AsyncListeningRequestWrapper(request);
+        listening.addAsyncListener(new ConcurrencyLimiter.AsyncRelease(limiter, System.nanoTime()));
+        AsyncContext asyncContext = listening.startAsync(listening, new MockHttpServletResponse());
+
+        assertFalse(limiter.tryAcquire());
+        asyncContext.complete();
+        assertTrue(limiter.tryAcquire());
+    }
+
+    @Test
+    public void asyncReleaseCountsTimeoutAsDropped() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(10, 1, 10, 2);
+        assertTrue(limiter.tryAcquire());
+
+        ConcurrencyLimiter.AsyncRelease release = new ConcurrencyLimiter.AsyncRelease(limiter, System.nanoTime());
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setAsyncSupported(true);
+        AsyncEvent event = new AsyncEvent(request.startAsync());
+        release.onTimeout(event);
+        release.onComplete(event);
+
+        assertEquals(9, limiter.getLimit());
+        assertTrue(limiter.tryAcquire());
+    }
+}
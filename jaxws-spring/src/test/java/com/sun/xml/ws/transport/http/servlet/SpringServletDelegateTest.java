@@ -0,0 +1,169 @@
+package com.sun.xml.ws.transport.http.servlet;
+
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.mock.web.MockServletContext;
+
+import javax.servlet.AsyncContext;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SpringServletDelegateTest {
+
+    private final MockServletContext context = new MockServletContext();
+
+    private final List<SpringServletDelegate.Route> routes = new ArrayList<>();
+
+    private SpringServletDelegate delegate;
+
+    @Test
+    public void exactPatternComesBeforePrefixPattern() {
+        route("/a/*");
+        route("/a/b");
+        createDelegate();
+
+        assertEquals("/a/b", urlOf("/a/b"));
+        assertEquals("/a/*", urlOf("/a/c"));
+        assertEquals("/a/*", urlOf("/a/b/c"));
+    }
+
+    @Test
+    public void firstRegisteredPrefixPatternWins() {
+        route("/a/*");
+        route("/a/b/*");
+        route("/c/d/*");
+        route("/c/*");
+        createDelegate();
+
+        assertEquals("/a/*", urlOf("/a/b"));
+        assertEquals("/a/*", urlOf("/a/b/c"));
+        assertEquals("/c/d/*", urlOf("/c/d/e"));
+        assertEquals("/c/*", urlOf("/c/e"));
+    }
+
+    @Test
+    public void prefixPatternMatchesOnlyWholeSegments() {
+        route("/a/*");
+        createDelegate();
+
+        assertEquals("/a/*", urlOf("/a"));
+        assertEquals("/a/*", urlOf("/a/"));
+        assertEquals("/a/*", urlOf("/a?wsdl"));
+        assertNull(delegate.findRoute("/ab"));
+        assertNull(delegate.findRoute("/ab/c"));
+        assertNull(delegate.findRoute("/"));
+    }
+
+    @Test
+    public void exactPatternDoesNotMatchSubpaths() {
+        route("/a");
+        createDelegate();
+
+        assertEquals("/a", urlOf("/a"));
+        assertNull(delegate.findRoute("/a/b"));
+        assertNull(delegate.findRoute("/ab"));
+    }
+
+    @Test
+    public void rootPrefixPatternMatchesEverything() {
+        route("/*");
+        route("/a/*");
+        createDelegate();
+
+        assertEquals("/*", urlOf("/"));
+        assertEquals("/*", urlOf("/a/b"));
+        assertEquals("/*", urlOf("/b"));
+    }
+
+    @Test
+    public void drainWaitsForRequestsInProgress() throws Exception {
+        createDelegate();
+        SpringServletDelegate.Target target = delegate.enter(new MockHttpServletRequest());
+        assertNotNull(target);
+
+        assertFalse(delegate.drain(0));
+        assertNull(delegate.enter(new MockHttpServletRequest()));
+        assertEquals(1, target.inFlight.get());
+
+        delegate.exit(target);
+        assertEquals(0, target.inFlight.get());
+        assertTrue(delegate.drain(0));
+    }
+
+    @Test
+    public void drainWaitsForAsynchronousRequests() throws Exception {
+        createDelegate();
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setAsyncSupported(true);
+        AsyncListeningRequestWrapper listening = new AsyncListeningRequestWrapper(request);
+        SpringServletDelegate.Target target = delegate.enter(listening);
+        listening.addAsyncListener(new SpringServletDelegate.AsyncExit(delegate, target));
+
+        AsyncContext asyncContext = listening.startAsync(listening, new MockHttpServletResponse());
+        assertTrue(listening.isAsyncRegistered());
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Boolean> drained = executor.submit(new Callable<Boolean>() {
+                public Boolean call() throws Exception {
+                    return delegate.drain(10000);
+                }
+            });
+            try {
+                drained.get(100, TimeUnit.MILLISECONDS);
+                throw new AssertionError("drained with a request in progress");
+            } catch (TimeoutException expected) {
+                // still waiting
+            }
+
+            asyncContext.complete();
+            assertTrue(drained.get(10, TimeUnit.SECONDS));
+            assertEquals(0, target.inFlight.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void synchronousRequestIsNotRegisteredForAsynchronousExit() throws Exception {
+        createDelegate();
+        AsyncListeningRequestWrapper listening = new AsyncListeningRequestWrapper(new MockHttpServletRequest());
+        SpringServletDelegate.Target target = delegate.enter(listening);
+        listening.addAsyncListener(new SpringServletDelegate.AsyncExit(delegate, target));
+
+        assertFalse(listening.isAsyncRegistered());
+        delegate.exit(target);
+        assertTrue(delegate.drain(0));
+    }
+
+    private void route(String urlPattern) {
+        SpringBinding binding = new SpringBinding();
+        binding.setUrl(urlPattern);
+        routes.add(new SpringServletDelegate.Route(binding, null));
+    }
+
+    private void createDelegate() {
+        delegate = new SpringServletDelegate(new SpringServletDelegate.AdapterList(context),
+                Collections.unmodifiableList(routes), context);
+    }
+
+    private String urlOf(String path) {
+        SpringServletDelegate.Route route = delegate.findRoute(path);
+        assertNotNull("no route for " + path, route);
+        return route.binding.getUrl();
+    }
+}